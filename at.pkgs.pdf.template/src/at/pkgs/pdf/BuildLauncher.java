@@ -23,13 +23,216 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.io.File;
 import java.io.IOException;
-import javax.xml.bind.JAXB;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import at.pkgs.pdf.builder.DocumentModel;
 
-public class BuildLauncher {
+public class BuildLauncher implements Launcher {
 
 	private static final String[] STRINGS = new String[0];
 
+	public static class Status {
+
+		private final int number;
+
+		private final boolean succeeded;
+
+		private final String message;
+
+		public Status(
+				int number,
+				boolean succeeded,
+				String message) {
+			this.number = number;
+			this.succeeded = succeeded;
+			this.message = message;
+		}
+
+		public int getNumber() {
+			return this.number;
+		}
+
+		public boolean isSucceeded() {
+			return this.succeeded;
+		}
+
+		public String getMessage() {
+			return this.message;
+		}
+
+		@Override
+		public String toString() {
+			return this.succeeded ?
+					this.number + ": ok" :
+					this.number + ": " + this.message;
+		}
+
+	}
+
+	public class Batch {
+
+		private final List<String> jobs;
+
+		private final List<File> temporals;
+
+		protected Batch() {
+			this.jobs = new ArrayList<String>();
+			this.temporals = new ArrayList<File>();
+		}
+
+		protected Batch add(
+				String... job) {
+			StringBuilder line;
+
+			line = new StringBuilder();
+			for (String field : job) {
+				if (field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0)
+					throw new IllegalArgumentException("job argument contains tab or line break: " + field);
+				if (line.length() > 0) line.append('\t');
+				line.append(field);
+			}
+			this.jobs.add(line.toString());
+			return this;
+		}
+
+		public int size() {
+			return this.jobs.size();
+		}
+
+		public Batch build(
+				File output,
+				File template,
+				DocumentModel model)
+						throws IOException {
+			File temporal;
+
+			temporal = File.createTempFile(BuildLauncher.this.getClass().getName() + '.', ".model");
+			this.temporals.add(temporal);
+			model.encode(temporal, false);
+			return this.add(
+					"build",
+					template.getAbsolutePath(),
+					output.getAbsolutePath(),
+					temporal.getAbsolutePath());
+		}
+
+		public Batch concatenate(
+				File output,
+				Collection<File> sources) {
+			List<String> job;
+
+			job = new ArrayList<String>();
+			job.add("concatenate");
+			for (File file : sources) job.add(file.getAbsolutePath());
+			job.add(output.getAbsolutePath());
+			return this.add(job.toArray(BuildLauncher.STRINGS));
+		}
+
+		public Batch split(
+				File firstHalf,
+				File lastHalf,
+				File source,
+				int page) {
+			return this.add(
+					"split",
+					source.getAbsolutePath(),
+					firstHalf.getAbsolutePath(),
+					lastHalf.getAbsolutePath(),
+					Integer.toString(page, 10));
+		}
+
+		public Batch extract(
+				File output,
+				File source,
+				int page,
+				int length) {
+			return this.add(
+					"extract",
+					source.getAbsolutePath(),
+					output.getAbsolutePath(),
+					Integer.toString(page, 10),
+					Integer.toString(length, 10));
+		}
+
+		public Batch burst(
+				String pattern,
+				File source,
+				int size) {
+			return this.add(
+					"burst",
+					source.getAbsolutePath(),
+					new File(pattern).getAbsolutePath(),
+					Integer.toString(size, 10));
+		}
+
+		public Batch burst(
+				String pattern,
+				File source,
+				int[] boundaries) {
+			List<String> job;
+
+			job = new ArrayList<String>();
+			job.add("burst");
+			job.add(source.getAbsolutePath());
+			job.add(new File(pattern).getAbsolutePath());
+			job.add("at");
+			for (int page : boundaries) job.add(Integer.toString(page, 10));
+			return this.add(job.toArray(BuildLauncher.STRINGS));
+		}
+
+		public List<Status> execute()
+				throws IOException {
+			File manifest;
+			File status;
+
+			manifest = File.createTempFile(BuildLauncher.this.getClass().getName() + '.', ".jobs");
+			status = File.createTempFile(BuildLauncher.this.getClass().getName() + '.', ".status");
+			try {
+				List<Status> statuses;
+				int result;
+
+				Files.write(manifest.toPath(), this.jobs, StandardCharsets.UTF_8);
+				result = BuildLauncher.this.launch(
+						"-jobs",
+						manifest.getAbsolutePath(),
+						status.getAbsolutePath());
+				if (result != 0 && result != 2)
+					throw new IOException(
+							String.format(
+									"failed on execute jobs" +
+									" (process exit with %d)",
+									result));
+				statuses = new ArrayList<Status>();
+				for (String line : Files.readAllLines(status.toPath(), StandardCharsets.UTF_8)) {
+					String[] fields;
+
+					fields = line.split("\t", 3);
+					statuses.add(
+							new Status(
+									Integer.parseInt(fields[0], 10),
+									fields[1].equals("ok"),
+									fields.length > 2 ? fields[2] : null));
+				}
+				if (statuses.size() != this.jobs.size())
+					throw new IOException(
+							String.format(
+									"failed on execute jobs" +
+									" (%d of %d jobs reported)",
+									statuses.size(),
+									this.jobs.size()));
+				return statuses;
+			}
+			finally {
+				manifest.delete();
+				status.delete();
+				for (File temporal : this.temporals) temporal.delete();
+				this.temporals.clear();
+				this.jobs.clear();
+			}
+		}
+
+	}
+
 	private final File java;
 
 	private final File binary;
@@ -40,6 +243,15 @@ public class BuildLauncher {
 		this.binary = binary;
 	}
 
+	public Batch batch() {
+		return new Batch();
+	}
+
+	public WorkerPool createPool(
+			int size) {
+		return new WorkerPool(this.binary, size);
+	}
+
 	protected int launch(
 			String... arguments)
 					throws IOException {
@@ -74,6 +286,7 @@ public class BuildLauncher {
 		return this.launch(arguments.toArray(BuildLauncher.STRINGS));
 	}
 
+	@Override
 	public void build(
 			File output,
 			File template,
@@ -81,11 +294,11 @@ public class BuildLauncher {
 					throws IOException {
 		File temporal;
 
-		temporal = File.createTempFile(this.getClass().getName() + '.', ".xml");
+		temporal = File.createTempFile(this.getClass().getName() + '.', ".model");
 		try {
 			int result;
 
-			JAXB.marshal(model, temporal);
+			model.encode(temporal, false);
 			result = this.launch(
 					"-build",
 					template.getAbsolutePath(),
@@ -103,6 +316,7 @@ public class BuildLauncher {
 		}
 	}
 
+	@Override
 	public void concatenate(
 			File output,
 			Collection<File> sources)
@@ -123,6 +337,7 @@ public class BuildLauncher {
 							result));
 	}
 
+	@Override
 	public void concatenate(
 			File output,
 			File... sources)
@@ -130,6 +345,7 @@ public class BuildLauncher {
 		this.concatenate(output, Arrays.asList(sources));
 	}
 
+	@Override
 	public void split(
 			File firstHalf,
 			File lastHalf,
@@ -164,6 +380,7 @@ public class BuildLauncher {
 		}
 	}
 
+	@Override
 	public void extract(
 			File output,
 			File source,
@@ -186,4 +403,49 @@ public class BuildLauncher {
 							result));
 	}
 
+	@Override
+	public void burst(
+			String pattern,
+			File source,
+			int size)
+					throws IOException {
+		int result;
+
+		result = this.launch(
+				"-burst",
+				source.getAbsolutePath(),
+				new File(pattern).getAbsolutePath(),
+				Integer.toString(size, 10));
+		if (result != 0)
+			throw new IOException(
+					String.format(
+							"failed on burst document" +
+							" (process exit with %d)",
+							result));
+	}
+
+	@Override
+	public void burst(
+			String pattern,
+			File source,
+			int[] boundaries)
+					throws IOException {
+		List<String> arguments;
+		int result;
+
+		arguments = new ArrayList<String>();
+		arguments.add("-burst");
+		arguments.add(source.getAbsolutePath());
+		arguments.add(new File(pattern).getAbsolutePath());
+		arguments.add("at");
+		for (int page : boundaries) arguments.add(Integer.toString(page, 10));
+		result = this.launch(arguments);
+		if (result != 0)
+			throw new IOException(
+					String.format(
+							"failed on burst document" +
+							" (process exit with %d)",
+							result));
+	}
+
 }
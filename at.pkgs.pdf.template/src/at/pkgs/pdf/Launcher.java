@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf;
+
+import java.util.Collection;
+import java.io.File;
+import java.io.IOException;
+import at.pkgs.pdf.builder.DocumentModel;
+
+public interface Launcher {
+
+	public void build(
+			File output,
+			File template,
+			DocumentModel model)
+					throws IOException;
+
+	public void concatenate(
+			File output,
+			Collection<File> sources)
+					throws IOException;
+
+	public void concatenate(
+			File output,
+			File... sources)
+					throws IOException;
+
+	public void split(
+			File firstHalf,
+			File lastHalf,
+			File source,
+			int page)
+					throws IOException;
+
+	public void extract(
+			File output,
+			File source,
+			int page,
+			int length)
+					throws IOException;
+
+	public void burst(
+			String pattern,
+			File source,
+			int size)
+					throws IOException;
+
+	public void burst(
+			String pattern,
+			File source,
+			int[] boundaries)
+					throws IOException;
+
+}
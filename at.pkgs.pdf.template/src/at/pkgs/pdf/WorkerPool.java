@@ -0,0 +1,568 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf;
+
+import java.util.Collection;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.File;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import at.pkgs.pdf.builder.DocumentModel;
+
+/*
+ * keeps up to size "-worker" processes; a worker is retired after
+ * maximumJobs jobs or when it reports more than maximumHeap bytes in use,
+ * and a worker that dies or is retired is replaced by a fresh one spawned
+ * in the background. a worker that does not answer a job within timeout
+ * milliseconds is killed and counts as dead.
+ */
+public class WorkerPool implements Launcher, Closeable {
+
+	public static final int DEFAULT_MAXIMUM_JOBS = 1000;
+
+	public static final long DEFAULT_MAXIMUM_HEAP = Long.MAX_VALUE;
+
+	public static final long DEFAULT_TIMEOUT = 600000L;
+
+	protected static interface Request {
+
+		public void write(DataOutputStream output)
+				throws IOException;
+
+	}
+
+	protected static class Connection {
+
+		private final Process process;
+
+		private final DataOutputStream output;
+
+		private final DataInputStream input;
+
+		private int jobs;
+
+		private long heap;
+
+		private volatile boolean expired;
+
+		protected Connection(Process process) {
+			this.process = process;
+			this.output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+			this.input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+			this.jobs = 0;
+			this.heap = 0L;
+			this.expired = false;
+		}
+
+		/* the blocked read of the job fails once the process is gone */
+		protected void expire() {
+			this.expired = true;
+			this.process.destroy();
+		}
+
+		protected void close(boolean alive) {
+			if (alive) {
+				try {
+					this.output.writeInt(WorkerProtocol.QUIT);
+					this.output.close();
+				}
+				catch (IOException ignored) {
+					// do nothing
+				}
+			}
+			else {
+				this.process.destroy();
+			}
+		}
+
+	}
+
+	private final File java;
+
+	private final File binary;
+
+	private final int size;
+
+	private final Deque<Connection> idle;
+
+	/* spawning a worker takes seconds, it must not delay a watchdog */
+	private final ExecutorService spawner;
+
+	private final ScheduledExecutorService timer;
+
+	private int count;
+
+	private boolean closed;
+
+	private volatile int maximumJobs;
+
+	private volatile long maximumHeap;
+
+	private volatile long timeout;
+
+	public WorkerPool(
+			File binary,
+			int size) {
+		final AtomicInteger sequence;
+		ThreadFactory factory;
+
+		if (size <= 0)
+			throw new IllegalArgumentException("size must be positive");
+		this.java = new File(System.getProperty("java.home"), "bin/java");
+		this.binary = binary;
+		this.size = size;
+		this.idle = new ArrayDeque<Connection>();
+		sequence = new AtomicInteger();
+		factory = new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread;
+
+				thread = new Thread(
+						runnable,
+						WorkerPool.class.getSimpleName() + '-' + sequence.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		};
+		this.spawner = Executors.newSingleThreadExecutor(factory);
+		this.timer = Executors.newSingleThreadScheduledExecutor(factory);
+		this.count = 0;
+		this.closed = false;
+		this.maximumJobs = WorkerPool.DEFAULT_MAXIMUM_JOBS;
+		this.maximumHeap = WorkerPool.DEFAULT_MAXIMUM_HEAP;
+		this.timeout = WorkerPool.DEFAULT_TIMEOUT;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public int getMaximumJobs() {
+		return this.maximumJobs;
+	}
+
+	public void setMaximumJobs(int maximumJobs) {
+		if (maximumJobs <= 0)
+			throw new IllegalArgumentException("maximumJobs must be positive");
+		this.maximumJobs = maximumJobs;
+	}
+
+	public long getMaximumHeap() {
+		return this.maximumHeap;
+	}
+
+	public void setMaximumHeap(long maximumHeap) {
+		if (maximumHeap <= 0L)
+			throw new IllegalArgumentException("maximumHeap must be positive");
+		this.maximumHeap = maximumHeap;
+	}
+
+	public long getTimeout() {
+		return this.timeout;
+	}
+
+	/* milliseconds a job may take, 0 waits forever */
+	public void setTimeout(long timeout) {
+		if (timeout < 0L)
+			throw new IllegalArgumentException("timeout must not be negative");
+		this.timeout = timeout;
+	}
+
+	protected Connection spawn()
+			throws IOException {
+		ProcessBuilder builder;
+
+		builder = new ProcessBuilder(
+				this.java.getAbsolutePath(),
+				"-jar",
+				this.binary.getAbsolutePath(),
+				"-worker");
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return new Connection(builder.start());
+	}
+
+	public void start()
+			throws IOException {
+		while (true) {
+			Connection connection;
+
+			synchronized (this) {
+				if (this.closed)
+					throw new IOException("pool closed");
+				if (this.count >= this.size) return;
+				this.count ++;
+			}
+			try {
+				connection = this.spawn();
+			}
+			catch (IOException | RuntimeException cause) {
+				synchronized (this) {
+					this.count --;
+					this.notifyAll();
+				}
+				throw cause;
+			}
+			synchronized (this) {
+				this.idle.push(connection);
+				this.notifyAll();
+			}
+		}
+	}
+
+	protected Connection acquire()
+			throws IOException {
+		synchronized (this) {
+			while (true) {
+				if (this.closed)
+					throw new IOException("pool closed");
+				if (!this.idle.isEmpty()) return this.idle.pop();
+				if (this.count < this.size) {
+					this.count ++;
+					break;
+				}
+				try {
+					this.wait();
+				}
+				catch (InterruptedException ignored) {
+					// do nothing
+				}
+			}
+		}
+		try {
+			return this.spawn();
+		}
+		catch (IOException | RuntimeException cause) {
+			synchronized (this) {
+				this.count --;
+				this.notifyAll();
+			}
+			throw cause;
+		}
+	}
+
+	/* the slot of the replaced worker stays counted until this is done */
+	protected void respawn() {
+		Connection replacement;
+
+		try {
+			replacement = this.spawn();
+		}
+		catch (IOException | RuntimeException ignored) {
+			replacement = null;
+		}
+		synchronized (this) {
+			if (replacement != null && !this.closed) {
+				this.idle.push(replacement);
+				replacement = null;
+			}
+			else {
+				this.count --;
+			}
+			this.notifyAll();
+		}
+		if (replacement != null) replacement.close(true);
+	}
+
+	protected void release(
+			Connection connection,
+			boolean alive) {
+		if (alive &&
+				connection.jobs < this.maximumJobs &&
+				connection.heap < this.maximumHeap) {
+			synchronized (this) {
+				if (!this.closed) {
+					this.idle.push(connection);
+					this.notifyAll();
+					return;
+				}
+			}
+		}
+		connection.close(alive);
+		synchronized (this) {
+			if (!this.closed) {
+				try {
+					this.spawner.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							WorkerPool.this.respawn();
+						}
+
+					});
+					return;
+				}
+				catch (RejectedExecutionException ignored) {
+					// do nothing
+				}
+			}
+			this.count --;
+			this.notifyAll();
+		}
+	}
+
+	protected Future<?> watch(final Connection connection) {
+		long timeout;
+
+		timeout = this.timeout;
+		if (timeout == 0L) return null;
+		try {
+			return this.timer.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					connection.expire();
+				}
+
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException ignored) {
+			/* closing, the job runs without a timeout */
+			return null;
+		}
+	}
+
+	protected void submit(
+			String name,
+			Request request)
+					throws IOException {
+		Connection connection;
+		Future<?> watchdog;
+		boolean alive;
+		int status;
+		String message;
+
+		connection = this.acquire();
+		watchdog = this.watch(connection);
+		alive = false;
+		try {
+			request.write(connection.output);
+			connection.output.flush();
+			status = connection.input.readInt();
+			message = WorkerProtocol.readString(connection.input);
+			connection.heap = connection.input.readLong();
+			connection.jobs ++;
+			alive = true;
+		}
+		catch (IOException cause) {
+			if (connection.expired)
+				throw new IOException("worker timed out on " + name, cause);
+			throw new IOException("worker died on " + name, cause);
+		}
+		finally {
+			if (watchdog != null) watchdog.cancel(false);
+			this.release(connection, alive && !connection.expired);
+		}
+		if (status != WorkerProtocol.SUCCEEDED)
+			throw new IOException(
+					String.format(
+							"failed on %s (%s)",
+							name,
+							message));
+	}
+
+	@Override
+	public void build(
+			final File output,
+			final File template,
+			DocumentModel model)
+					throws IOException {
+		final ByteArrayOutputStream buffer;
+
+		buffer = new ByteArrayOutputStream();
+		model.encode(buffer, false);
+		this.submit("build document", new Request() {
+
+			@Override
+			public void write(DataOutputStream stream)
+					throws IOException {
+				stream.writeInt(WorkerProtocol.BUILD);
+				WorkerProtocol.writeString(stream, template.getAbsolutePath());
+				WorkerProtocol.writeString(stream, output.getAbsolutePath());
+				stream.writeInt(buffer.size());
+				buffer.writeTo(stream);
+			}
+
+		});
+	}
+
+	@Override
+	public void concatenate(
+			final File output,
+			final Collection<File> sources)
+					throws IOException {
+		this.submit("concatenate documents", new Request() {
+
+			@Override
+			public void write(DataOutputStream stream)
+					throws IOException {
+				stream.writeInt(WorkerProtocol.CONCATENATE);
+				WorkerProtocol.writeString(stream, output.getAbsolutePath());
+				stream.writeInt(sources.size());
+				for (File file : sources)
+					WorkerProtocol.writeString(stream, file.getAbsolutePath());
+			}
+
+		});
+	}
+
+	@Override
+	public void concatenate(
+			File output,
+			File... sources)
+					throws IOException {
+		this.concatenate(output, Arrays.asList(sources));
+	}
+
+	@Override
+	public void split(
+			File firstHalf,
+			File lastHalf,
+			final File source,
+			final int page)
+					throws IOException {
+		File temporal;
+
+		if (firstHalf == null && lastHalf == null)
+			throw new IllegalArgumentException("firstHalf and lastHalf are null");
+		temporal = null;
+		if (firstHalf == null) firstHalf = temporal = File.createTempFile(this.getClass().getName() + '.', ".pdf");
+		if (lastHalf == null) lastHalf = temporal = File.createTempFile(this.getClass().getName() + '.', ".pdf");
+		try {
+			final File first;
+			final File last;
+
+			first = firstHalf;
+			last = lastHalf;
+			this.submit("split documents", new Request() {
+
+				@Override
+				public void write(DataOutputStream stream)
+						throws IOException {
+					stream.writeInt(WorkerProtocol.SPLIT);
+					WorkerProtocol.writeString(stream, source.getAbsolutePath());
+					WorkerProtocol.writeString(stream, first.getAbsolutePath());
+					WorkerProtocol.writeString(stream, last.getAbsolutePath());
+					stream.writeInt(page);
+				}
+
+			});
+		}
+		finally {
+			if (temporal != null) temporal.delete();
+		}
+	}
+
+	@Override
+	public void extract(
+			final File output,
+			final File source,
+			final int page,
+			final int length)
+					throws IOException {
+		this.submit("extract documents", new Request() {
+
+			@Override
+			public void write(DataOutputStream stream)
+					throws IOException {
+				stream.writeInt(WorkerProtocol.EXTRACT);
+				WorkerProtocol.writeString(stream, source.getAbsolutePath());
+				WorkerProtocol.writeString(stream, output.getAbsolutePath());
+				stream.writeInt(page);
+				stream.writeInt(length);
+			}
+
+		});
+	}
+
+	protected void burst(
+			final String pattern,
+			final File source,
+			final int size,
+			final int[] boundaries)
+					throws IOException {
+		this.submit("burst document", new Request() {
+
+			@Override
+			public void write(DataOutputStream stream)
+					throws IOException {
+				stream.writeInt(WorkerProtocol.BURST);
+				WorkerProtocol.writeString(stream, source.getAbsolutePath());
+				WorkerProtocol.writeString(stream, new File(pattern).getAbsolutePath());
+				stream.writeInt(size);
+				stream.writeInt(boundaries.length);
+				for (int page : boundaries) stream.writeInt(page);
+			}
+
+		});
+	}
+
+	@Override
+	public void burst(
+			String pattern,
+			File source,
+			int size)
+					throws IOException {
+		if (size <= 0)
+			throw new IllegalArgumentException("size must be positive");
+		this.burst(pattern, source, size, new int[0]);
+	}
+
+	@Override
+	public void burst(
+			String pattern,
+			File source,
+			int[] boundaries)
+					throws IOException {
+		this.burst(pattern, source, 0, boundaries);
+	}
+
+	@Override
+	public void close() {
+		Connection[] connections;
+
+		synchronized (this) {
+			this.closed = true;
+			connections = this.idle.toArray(new Connection[this.idle.size()]);
+			this.count -= connections.length;
+			this.idle.clear();
+			this.notifyAll();
+		}
+		this.spawner.shutdown();
+		this.timer.shutdown();
+		for (Connection connection : connections) connection.close(true);
+	}
+
+}
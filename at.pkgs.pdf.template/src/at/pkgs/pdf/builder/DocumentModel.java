@@ -22,7 +22,10 @@ import java.util.ArrayList;
 import java.io.Serializable;
 import java.io.File;
 import java.io.InputStream;
-import javax.xml.bind.JAXB;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.OutputStream;
+import java.io.IOException;
 import javax.xml.bind.annotation.XmlType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAccessType;
@@ -37,6 +40,7 @@ import javax.xml.bind.annotation.XmlEnumValue;
 @XmlType(propOrder = {
 		"version",
 		"fonts",
+		"layouts",
 		"values",
 })
 @XmlAccessorType(XmlAccessType.NONE)
@@ -507,12 +511,363 @@ public class DocumentModel implements Serializable {
 
 	}
 
+	@XmlType(propOrder = {
+			"page",
+			"left",
+			"top",
+			"width",
+			"height",
+			"horizontal",
+			"size",
+			"color",
+			"symbology",
+			"pattern",
+			"value",
+	})
+	@XmlAccessorType(XmlAccessType.NONE)
+	public static class Barcode implements Value {
+
+		private static final long serialVersionUID = 1L;
+
+		private int page;
+
+		private float left;
+
+		private float top;
+
+		private float width;
+
+		private float height;
+
+		private Horizontal horizontal;
+
+		private float size;
+
+		private String color;
+
+		private String symbology;
+
+		private String pattern;
+
+		private String value;
+
+		public Barcode(
+				int page,
+				float left,
+				float top,
+				float width,
+				float height,
+				Horizontal horizontal,
+				float size,
+				String color,
+				String symbology,
+				String pattern,
+				String value) {
+			this.page = page;
+			this.left = left;
+			this.top = top;
+			this.width = width;
+			this.height = height;
+			this.horizontal = horizontal;
+			this.size = size;
+			this.color = color;
+			this.symbology = symbology;
+			this.pattern = pattern;
+			this.value = value;
+		}
+
+		public Barcode() {
+			this(
+					0,
+					0F,
+					0F,
+					0F,
+					0F,
+					null,
+					0F,
+					null,
+					null,
+					null,
+					null);
+		}
+
+		@XmlAttribute(name = "page")
+		public int getPage() {
+			return this.page;
+		}
+
+		public void setPage(int value) {
+			this.page = value;
+		}
+
+		@XmlAttribute(name = "left")
+		public float getLeft() {
+			return this.left;
+		}
+
+		public void setLeft(float value) {
+			this.left = value;
+		}
+
+		@XmlAttribute(name = "top")
+		public float getTop() {
+			return this.top;
+		}
+
+		public void setTop(float value) {
+			this.top = value;
+		}
+
+		@XmlAttribute(name = "width")
+		public float getWidth() {
+			return this.width;
+		}
+
+		public void setWidth(float value) {
+			this.width = value;
+		}
+
+		@XmlAttribute(name = "height")
+		public float getHeight() {
+			return this.height;
+		}
+
+		public void setHeight(float value) {
+			this.height = value;
+		}
+
+		@XmlAttribute(name = "horizontal")
+		public Horizontal getHorizontal() {
+			return this.horizontal;
+		}
+
+		public void setHorizontal(Horizontal value) {
+			this.horizontal = value;
+		}
+
+		@XmlAttribute(name = "size")
+		public float getSize() {
+			return this.size;
+		}
+
+		public void setSize(float value) {
+			this.size = value;
+		}
+
+		@XmlAttribute()
+		public String getColor() {
+			return this.color;
+		}
+
+		public void setColor(String color) {
+			this.color = color;
+		}
+
+		@XmlAttribute(name = "symbology")
+		public String getSymbology() {
+			return this.symbology;
+		}
+
+		public void setSymbology(String value) {
+			this.symbology = value;
+		}
+
+		/*
+		 * space separated module widths alternating space and bar,
+		 * starting with a (possibly zero width) space.
+		 */
+		@XmlAttribute(name = "pattern")
+		public String getPattern() {
+			return this.pattern;
+		}
+
+		public void setPattern(String value) {
+			this.pattern = value;
+		}
+
+		@XmlValue()
+		public String getValue() {
+			return this.value;
+		}
+
+		public void setValue(String value) {
+			this.value = value;
+		}
+
+	}
+
+	@XmlType(propOrder = {
+			"page",
+			"left",
+			"top",
+			"layout",
+	})
+	@XmlAccessorType(XmlAccessType.NONE)
+	public static class Place implements Value {
+
+		private static final long serialVersionUID = 1L;
+
+		private int page;
+
+		private float left;
+
+		private float top;
+
+		private String layout;
+
+		public Place(
+				int page,
+				float left,
+				float top,
+				String layout) {
+			this.page = page;
+			this.left = left;
+			this.top = top;
+			this.layout = layout;
+		}
+
+		public Place() {
+			this(
+					0,
+					0F,
+					0F,
+					null);
+		}
+
+		@XmlAttribute(name = "page")
+		public int getPage() {
+			return this.page;
+		}
+
+		public void setPage(int value) {
+			this.page = value;
+		}
+
+		@XmlAttribute(name = "left")
+		public float getLeft() {
+			return this.left;
+		}
+
+		public void setLeft(float value) {
+			this.left = value;
+		}
+
+		@XmlAttribute(name = "top")
+		public float getTop() {
+			return this.top;
+		}
+
+		public void setTop(float value) {
+			this.top = value;
+		}
+
+		@XmlAttribute(name = "layout")
+		public String getLayout() {
+			return this.layout;
+		}
+
+		public void setLayout(String value) {
+			this.layout = value;
+		}
+
+	}
+
+	/*
+	 * values positioned relative to the top left corner of the layout,
+	 * their page is ignored; rendered once and drawn by each Place.
+	 */
+	@XmlType(propOrder = {
+			"name",
+			"width",
+			"height",
+			"values",
+	})
+	@XmlAccessorType(XmlAccessType.NONE)
+	public static class Layout implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+
+		private float width;
+
+		private float height;
+
+		private List<Value> values;
+
+		public Layout(
+				String name,
+				float width,
+				float height) {
+			this.name = name;
+			this.width = width;
+			this.height = height;
+		}
+
+		public Layout() {
+			this(
+					null,
+					0F,
+					0F);
+		}
+
+		@XmlAttribute(name = "name")
+		public String getName() {
+			return this.name;
+		}
+
+		public void setName(String value) {
+			this.name = value;
+		}
+
+		@XmlAttribute(name = "width")
+		public float getWidth() {
+			return this.width;
+		}
+
+		public void setWidth(float value) {
+			this.width = value;
+		}
+
+		@XmlAttribute(name = "height")
+		public float getHeight() {
+			return this.height;
+		}
+
+		public void setHeight(float value) {
+			this.height = value;
+		}
+
+		@XmlElements({
+			@XmlElement(name = "Text", type = Text.class),
+			@XmlElement(name = "Rectangle", type = Rectangle.class),
+			@XmlElement(name = "Barcode", type = Barcode.class),
+			@XmlElement(name = "Place", type = Place.class),
+		})
+		public List<Value> getValues() {
+			return this.values;
+		}
+
+		public void setValues(List<Value> value) {
+			this.values = value;
+		}
+
+		public void add(Value value) {
+			if (this.values == null)
+				this.values = new ArrayList<Value>();
+			this.values.add(value);
+		}
+
+	}
+
 	private static final long serialVersionUID = 1L;
 
 	private int version;
 
 	private List<Font> fonts;
 
+	private List<Layout> layouts;
+
 	private List<Value> values;
 
 	public DocumentModel() {
@@ -544,10 +899,28 @@ public class DocumentModel implements Serializable {
 		this.fonts.add(value);
 	}
 
+	@XmlElementWrapper(name = "Layouts")
+	@XmlElement(name = "Layout")
+	public List<Layout> getLayouts() {
+		return this.layouts;
+	}
+
+	public void setLayouts(List<Layout> value) {
+		this.layouts = value;
+	}
+
+	public void add(Layout value) {
+		if (this.layouts == null)
+			this.layouts = new ArrayList<Layout>();
+		this.layouts.add(value);
+	}
+
 	@XmlElementWrapper(name = "Values")
 	@XmlElements({
 		@XmlElement(name = "Text", type = Text.class),
 		@XmlElement(name = "Rectangle", type = Rectangle.class),
+		@XmlElement(name = "Barcode", type = Barcode.class),
+		@XmlElement(name = "Place", type = Place.class),
 	})
 	public List<Value> getValues() {
 		return this.values;
@@ -564,14 +937,70 @@ public class DocumentModel implements Serializable {
 	}
 
 	public static DocumentModel parse(InputStream source) {
-		return JAXB.unmarshal(source, DocumentModel.class);
+		final DocumentModel model;
+
+		model = new DocumentModel();
+		try {
+			DocumentModelReader.read(source, new DocumentModelReader.Handler() {
+
+				@Override
+				public void version(int version) {
+					model.setVersion(version);
+				}
+
+				@Override
+				public void font(Font font) {
+					model.add(font);
+				}
+
+				@Override
+				public void layout(Layout layout) {
+					model.add(layout);
+				}
+
+				@Override
+				public void value(Value value) {
+					model.add(value);
+				}
+
+			});
+		}
+		catch (IOException cause) {
+			throw new IllegalArgumentException("failed on parse DocumentModel", cause);
+		}
+		return model;
 	}
 
 	public static DocumentModel parse(File source) {
-		return JAXB.unmarshal(source, DocumentModel.class);
+		try (InputStream input = new BufferedInputStream(new FileInputStream(source))) {
+			return DocumentModel.parse(input);
+		}
+		catch (IOException cause) {
+			throw new IllegalArgumentException("failed on parse DocumentModel", cause);
+		}
+	}
+
+	public void write(OutputStream destination)
+			throws IOException {
+		DocumentModelWriter.write(this, destination);
+	}
+
+	public void write(File destination)
+			throws IOException {
+		DocumentModelWriter.write(this, destination);
+	}
+
+	public void encode(OutputStream destination, boolean compress)
+			throws IOException {
+		DocumentModelEncoder.write(this, destination, compress);
+	}
+
+	public void encode(File destination, boolean compress)
+			throws IOException {
+		DocumentModelEncoder.write(this, destination, compress);
 	}
 
-	public static void main(String[] arguments) {
+	public static void main(String[] arguments) throws IOException {
 		DocumentModel model;
 
 		model = new DocumentModel();
@@ -608,7 +1037,7 @@ public class DocumentModel implements Serializable {
 						"This is a text." +
 						"This is a text.\n" +
 						"This is a text.\n"));
-		JAXB.marshal(model, System.out);
+		model.write(System.out);
 	}
 
 }
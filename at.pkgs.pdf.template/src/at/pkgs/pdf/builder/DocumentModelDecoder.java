@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.DataInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class DocumentModelDecoder {
+
+	private final InputStream source;
+
+	private final List<String> dictionary;
+
+	private DataInputStream data;
+
+	public DocumentModelDecoder(InputStream source) {
+		this.source = source;
+		this.dictionary = new ArrayList<String>();
+	}
+
+	protected int readVarint()
+			throws IOException {
+		int value;
+		int shift;
+		int current;
+
+		value = 0;
+		for (shift = 0; shift < 32; shift += 7) {
+			current = this.data.readUnsignedByte();
+			value |= (current & 0x7F) << shift;
+			if ((current & 0x80) == 0) return value;
+		}
+		throw new IOException("malformed varint");
+	}
+
+	protected String readString()
+			throws IOException {
+		int length;
+		byte[] bytes;
+
+		length = this.readVarint();
+		if (length == 0) return null;
+		bytes = new byte[length - 1];
+		this.data.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	protected String readEntry()
+			throws IOException {
+		int code;
+		String value;
+
+		code = this.readVarint();
+		switch (code) {
+		case 0 :
+			return null;
+		case 1 :
+			value = this.readString();
+			this.dictionary.add(value);
+			return value;
+		default :
+			if (code - 2 >= this.dictionary.size())
+				throw new IOException("dictionary entry not found: " + (code - 2));
+			return this.dictionary.get(code - 2);
+		}
+	}
+
+	protected DocumentModel.Horizontal readHorizontal()
+			throws IOException {
+		int code;
+
+		code = this.data.readUnsignedByte();
+		if (code == 0) return null;
+		if (code > DocumentModel.Horizontal.values().length)
+			throw new IOException("unknown horizontal: " + code);
+		return DocumentModel.Horizontal.values()[code - 1];
+	}
+
+	protected DocumentModel.Font readFont()
+			throws IOException {
+		DocumentModel.Font font;
+
+		font = new DocumentModel.Font();
+		font.setName(this.readEntry());
+		font.setFile(this.readEntry());
+		font.setEncoding(this.readEntry());
+		font.setEmbeded(this.data.readBoolean());
+		return font;
+	}
+
+	protected DocumentModel.Text readText()
+			throws IOException {
+		DocumentModel.Text text;
+
+		text = new DocumentModel.Text();
+		text.setPage(this.readVarint());
+		text.setLeft(this.data.readFloat());
+		text.setTop(this.data.readFloat());
+		text.setWidth(this.data.readFloat());
+		text.setHeight(this.data.readFloat());
+		text.setLeading(this.data.readFloat());
+		text.setHorizontal(this.readHorizontal());
+		text.setFont(this.readEntry());
+		text.setSize(this.data.readFloat());
+		text.setColor(this.readEntry());
+		text.setValue(this.readString());
+		return text;
+	}
+
+	protected DocumentModel.Rectangle readRectangle()
+			throws IOException {
+		DocumentModel.Rectangle rectangle;
+		int verb;
+
+		rectangle = new DocumentModel.Rectangle();
+		rectangle.setPage(this.readVarint());
+		rectangle.setLeft(this.data.readFloat());
+		rectangle.setTop(this.data.readFloat());
+		rectangle.setWidth(this.data.readFloat());
+		rectangle.setHeight(this.data.readFloat());
+		verb = this.data.readUnsignedByte();
+		switch (verb) {
+		case 0 :
+			break;
+		case DocumentModelEncoder.STROKE :
+			rectangle.setVerb(
+					new DocumentModel.Stroke(
+							this.data.readFloat(),
+							this.readEntry()));
+			break;
+		case DocumentModelEncoder.FILL :
+			rectangle.setVerb(
+					new DocumentModel.Fill(
+							this.readEntry()));
+			break;
+		default :
+			throw new IOException("unknown verb: " + verb);
+		}
+		return rectangle;
+	}
+
+	protected DocumentModel.Barcode readBarcode()
+			throws IOException {
+		DocumentModel.Barcode barcode;
+
+		barcode = new DocumentModel.Barcode();
+		barcode.setPage(this.readVarint());
+		barcode.setLeft(this.data.readFloat());
+		barcode.setTop(this.data.readFloat());
+		barcode.setWidth(this.data.readFloat());
+		barcode.setHeight(this.data.readFloat());
+		barcode.setHorizontal(this.readHorizontal());
+		barcode.setSize(this.data.readFloat());
+		barcode.setColor(this.readEntry());
+		barcode.setSymbology(this.readEntry());
+		barcode.setPattern(this.readString());
+		barcode.setValue(this.readString());
+		return barcode;
+	}
+
+	protected DocumentModel.Place readPlace()
+			throws IOException {
+		DocumentModel.Place place;
+
+		place = new DocumentModel.Place();
+		place.setPage(this.readVarint());
+		place.setLeft(this.data.readFloat());
+		place.setTop(this.data.readFloat());
+		place.setLayout(this.readEntry());
+		return place;
+	}
+
+	protected DocumentModel.Value readValue()
+			throws IOException {
+		int type;
+
+		type = this.data.readUnsignedByte();
+		switch (type) {
+		case DocumentModelEncoder.TEXT :
+			return this.readText();
+		case DocumentModelEncoder.RECTANGLE :
+			return this.readRectangle();
+		case DocumentModelEncoder.BARCODE :
+			return this.readBarcode();
+		case DocumentModelEncoder.PLACE :
+			return this.readPlace();
+		default :
+			throw new IOException("unknown value type: " + type);
+		}
+	}
+
+	protected DocumentModel.Layout readLayout()
+			throws IOException {
+		DocumentModel.Layout layout;
+		int index;
+		int count;
+
+		layout = new DocumentModel.Layout();
+		layout.setName(this.readEntry());
+		layout.setWidth(this.data.readFloat());
+		layout.setHeight(this.data.readFloat());
+		count = this.readVarint();
+		if (count > 0) layout.setValues(new ArrayList<DocumentModel.Value>());
+		for (index = 1; index < count; index ++) layout.add(this.readValue());
+		return layout;
+	}
+
+	public void read(DocumentModelReader.Handler handler)
+			throws IOException {
+		byte[] header;
+		int index;
+		int version;
+		int count;
+
+		header = new byte[DocumentModelEncoder.MAGIC.length + 2];
+		new DataInputStream(this.source).readFully(header);
+		for (index = 0; index < DocumentModelEncoder.MAGIC.length; index ++) {
+			if (header[index] != DocumentModelEncoder.MAGIC[index])
+				throw new IOException("encoded DocumentModel not found");
+		}
+		version = header[index];
+		if (version < 1 || version > DocumentModelEncoder.FORMAT_VERSION)
+			throw new IOException("unsupported format version: " + version);
+		this.data = new DataInputStream(
+				(header[index + 1] & DocumentModelEncoder.FLAG_GZIP) != 0 ?
+						new GZIPInputStream(this.source, 8192) :
+						new BufferedInputStream(this.source));
+		this.dictionary.clear();
+		handler.version(this.data.readInt());
+		count = this.readVarint();
+		for (index = 1; index < count; index ++) handler.font(this.readFont());
+		if (version >= 2) {
+			count = this.readVarint();
+			for (index = 1; index < count; index ++) handler.layout(this.readLayout());
+		}
+		count = this.readVarint();
+		for (index = 1; index < count; index ++) handler.value(this.readValue());
+	}
+
+	public static boolean isEncoded(InputStream source)
+			throws IOException {
+		byte[] header;
+		int length;
+		int read;
+
+		if (!source.markSupported())
+			throw new IllegalArgumentException("source must support mark");
+		header = new byte[DocumentModelEncoder.MAGIC.length];
+		source.mark(header.length);
+		try {
+			length = 0;
+			while (length < header.length) {
+				read = source.read(header, length, header.length - length);
+				if (read < 0) return false;
+				length += read;
+			}
+		}
+		finally {
+			source.reset();
+		}
+		for (length = 0; length < header.length; length ++) {
+			if (header[length] != DocumentModelEncoder.MAGIC[length]) return false;
+		}
+		return true;
+	}
+
+	public static void read(InputStream source, DocumentModelReader.Handler handler)
+			throws IOException {
+		new DocumentModelDecoder(source).read(handler);
+	}
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.io.InputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+public class DocumentModelReader {
+
+	public static interface Handler {
+
+		public void version(int version)
+				throws IOException;
+
+		public void font(DocumentModel.Font font)
+				throws IOException;
+
+		public void layout(DocumentModel.Layout layout)
+				throws IOException;
+
+		public void value(DocumentModel.Value value)
+				throws IOException;
+
+	}
+
+	private static final XMLInputFactory FACTORY;
+
+	static {
+		FACTORY = XMLInputFactory.newInstance();
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private final XMLStreamReader reader;
+
+	public DocumentModelReader(InputStream source)
+			throws IOException {
+		try {
+			this.reader = DocumentModelReader.FACTORY.createXMLStreamReader(source);
+		}
+		catch (XMLStreamException cause) {
+			throw new IOException(cause);
+		}
+	}
+
+	protected String attribute(String name) {
+		return this.reader.getAttributeValue(null, name);
+	}
+
+	protected int intAttribute(String name) {
+		String value;
+
+		value = this.attribute(name);
+		return (value == null) ? 0 : Integer.parseInt(value.trim(), 10);
+	}
+
+	protected float floatAttribute(String name) {
+		String value;
+
+		value = this.attribute(name);
+		if (value == null) return 0F;
+		value = value.trim();
+		switch (value) {
+		case "NaN" :
+			return Float.NaN;
+		case "INF" :
+			return Float.POSITIVE_INFINITY;
+		case "-INF" :
+			return Float.NEGATIVE_INFINITY;
+		default :
+			return Float.parseFloat(value);
+		}
+	}
+
+	protected boolean booleanAttribute(String name) {
+		String value;
+
+		value = this.attribute(name);
+		if (value == null) return false;
+		value = value.trim();
+		return value.equals("true") || value.equals("1");
+	}
+
+	protected DocumentModel.Horizontal horizontalAttribute(String name) {
+		String value;
+
+		value = this.attribute(name);
+		if (value == null) return null;
+		switch (value.trim()) {
+		case "left" :
+			return DocumentModel.Horizontal.LEFT;
+		case "center" :
+			return DocumentModel.Horizontal.CENTER;
+		case "right" :
+			return DocumentModel.Horizontal.RIGHT;
+		default :
+			return null;
+		}
+	}
+
+	protected void skip()
+			throws XMLStreamException {
+		int depth;
+
+		depth = 1;
+		while (depth > 0) {
+			switch (this.reader.next()) {
+			case XMLStreamConstants.START_ELEMENT :
+				depth ++;
+				break;
+			case XMLStreamConstants.END_ELEMENT :
+				depth --;
+				break;
+			}
+		}
+	}
+
+	protected boolean nextElement()
+			throws XMLStreamException {
+		while (true) {
+			switch (this.reader.next()) {
+			case XMLStreamConstants.START_ELEMENT :
+				return true;
+			case XMLStreamConstants.END_ELEMENT :
+			case XMLStreamConstants.END_DOCUMENT :
+				return false;
+			}
+		}
+	}
+
+	protected DocumentModel.Font readFont()
+			throws XMLStreamException {
+		DocumentModel.Font font;
+
+		font = new DocumentModel.Font();
+		font.setName(this.attribute("name"));
+		font.setEncoding(this.attribute("encoding"));
+		font.setEmbeded(this.booleanAttribute("embeded"));
+		font.setFile(this.reader.getElementText());
+		return font;
+	}
+
+	protected DocumentModel.Text readText()
+			throws XMLStreamException {
+		DocumentModel.Text text;
+
+		text = new DocumentModel.Text();
+		text.setPage(this.intAttribute("page"));
+		text.setLeft(this.floatAttribute("left"));
+		text.setTop(this.floatAttribute("top"));
+		text.setWidth(this.floatAttribute("width"));
+		text.setHeight(this.floatAttribute("height"));
+		text.setLeading(this.floatAttribute("leading"));
+		text.setHorizontal(this.horizontalAttribute("horizontal"));
+		text.setFont(this.attribute("font"));
+		text.setSize(this.floatAttribute("size"));
+		text.setColor(this.attribute("color"));
+		text.setValue(this.reader.getElementText());
+		return text;
+	}
+
+	protected DocumentModel.Rectangle readRectangle()
+			throws XMLStreamException {
+		DocumentModel.Rectangle rectangle;
+
+		rectangle = new DocumentModel.Rectangle();
+		rectangle.setPage(this.intAttribute("page"));
+		rectangle.setLeft(this.floatAttribute("left"));
+		rectangle.setTop(this.floatAttribute("top"));
+		rectangle.setWidth(this.floatAttribute("width"));
+		rectangle.setHeight(this.floatAttribute("height"));
+		while (this.nextElement()) {
+			switch (this.reader.getLocalName()) {
+			case "Stroke" :
+				rectangle.setVerb(
+						new DocumentModel.Stroke(
+								this.floatAttribute("width"),
+								this.attribute("color")));
+				this.skip();
+				break;
+			case "Fill" :
+				rectangle.setVerb(
+						new DocumentModel.Fill(
+								this.attribute("color")));
+				this.skip();
+				break;
+			default :
+				this.skip();
+				break;
+			}
+		}
+		return rectangle;
+	}
+
+	protected DocumentModel.Barcode readBarcode()
+			throws XMLStreamException {
+		DocumentModel.Barcode barcode;
+
+		barcode = new DocumentModel.Barcode();
+		barcode.setPage(this.intAttribute("page"));
+		barcode.setLeft(this.floatAttribute("left"));
+		barcode.setTop(this.floatAttribute("top"));
+		barcode.setWidth(this.floatAttribute("width"));
+		barcode.setHeight(this.floatAttribute("height"));
+		barcode.setHorizontal(this.horizontalAttribute("horizontal"));
+		barcode.setSize(this.floatAttribute("size"));
+		barcode.setColor(this.attribute("color"));
+		barcode.setSymbology(this.attribute("symbology"));
+		barcode.setPattern(this.attribute("pattern"));
+		barcode.setValue(this.reader.getElementText());
+		return barcode;
+	}
+
+	protected DocumentModel.Place readPlace()
+			throws XMLStreamException {
+		DocumentModel.Place place;
+
+		place = new DocumentModel.Place();
+		place.setPage(this.intAttribute("page"));
+		place.setLeft(this.floatAttribute("left"));
+		place.setTop(this.floatAttribute("top"));
+		place.setLayout(this.attribute("layout"));
+		this.skip();
+		return place;
+	}
+
+	protected DocumentModel.Value readValue()
+			throws XMLStreamException {
+		switch (this.reader.getLocalName()) {
+		case "Text" :
+			return this.readText();
+		case "Rectangle" :
+			return this.readRectangle();
+		case "Barcode" :
+			return this.readBarcode();
+		case "Place" :
+			return this.readPlace();
+		default :
+			this.skip();
+			return null;
+		}
+	}
+
+	protected DocumentModel.Layout readLayout()
+			throws XMLStreamException {
+		DocumentModel.Layout layout;
+
+		layout = new DocumentModel.Layout();
+		layout.setName(this.attribute("name"));
+		layout.setWidth(this.floatAttribute("width"));
+		layout.setHeight(this.floatAttribute("height"));
+		while (this.nextElement()) {
+			DocumentModel.Value value;
+
+			value = this.readValue();
+			if (value != null) layout.add(value);
+		}
+		return layout;
+	}
+
+	protected void readFonts(Handler handler)
+			throws XMLStreamException, IOException {
+		while (this.nextElement()) {
+			if (this.reader.getLocalName().equals("Font"))
+				handler.font(this.readFont());
+			else
+				this.skip();
+		}
+	}
+
+	protected void readLayouts(Handler handler)
+			throws XMLStreamException, IOException {
+		while (this.nextElement()) {
+			if (this.reader.getLocalName().equals("Layout"))
+				handler.layout(this.readLayout());
+			else
+				this.skip();
+		}
+	}
+
+	protected void readValues(Handler handler)
+			throws XMLStreamException, IOException {
+		while (this.nextElement()) {
+			DocumentModel.Value value;
+
+			value = this.readValue();
+			if (value != null) handler.value(value);
+		}
+	}
+
+	public void read(Handler handler)
+			throws IOException {
+		try {
+			if (!this.nextElement() || !this.reader.getLocalName().equals("DocumentModel"))
+				throw new IOException("DocumentModel element not found");
+			if (this.attribute("version") != null)
+				handler.version(this.intAttribute("version"));
+			while (this.nextElement()) {
+				switch (this.reader.getLocalName()) {
+				case "Fonts" :
+					this.readFonts(handler);
+					break;
+				case "Layouts" :
+					this.readLayouts(handler);
+					break;
+				case "Values" :
+					this.readValues(handler);
+					break;
+				default :
+					this.skip();
+					break;
+				}
+			}
+		}
+		catch (XMLStreamException | IllegalArgumentException cause) {
+			throw new IOException("failed on read DocumentModel", cause);
+		}
+		finally {
+			try {
+				this.reader.close();
+			}
+			catch (XMLStreamException ignored) {
+				// do nothing
+			}
+		}
+	}
+
+	public static void read(InputStream source, Handler handler)
+			throws IOException {
+		if (!source.markSupported()) source = new BufferedInputStream(source);
+		if (DocumentModelDecoder.isEncoded(source))
+			DocumentModelDecoder.read(source, handler);
+		else
+			new DocumentModelReader(source).read(handler);
+	}
+
+}
@@ -71,43 +71,42 @@ public abstract class BarcodeStamper {
 			return this.barcode;
 		}
 
-		@Override
-		public void merge(float offsetLeft, float offsetTop, DocumentModel model, String value) {
-			OneDimensionalImage image;
-			float scale;
-			float left;
+		public static String pattern(OneDimensionalImage image) {
+			StringBuilder builder;
+			double position;
 
-			if (value == null) return;
-			image = this.barcode.encode(value);
-			scale = this.size;
-			left = this.getLeft();
-			if (this.horizontalAlign == null) {
-				scale = this.getWidth() / (float)image.getSize();
-			}
-			else {
-				float margin;
-
-				margin = this.getWidth() - ((float)image.getSize() * scale);
-				switch (this.horizontalAlign) {
-				case CENTER :
-					left += margin / 2F;
-					break;
-				case LEFT :
-					break;
-				case RIGHT :
-					left += margin;
-					break;
-				}
-			}
+			builder = new StringBuilder();
+			position = 0D;
 			for (OneDimensionalImage.Bar bar : image.getBars()) {
-				model.add(new DocumentModel.Rectangle(
-						this.getPage(),
-						offsetLeft + left + ((float)bar.getPosition() * scale),
-						offsetTop + this.getTop(),
-						(float)bar.getLength() * scale,
-						this.getHeight(),
-						new DocumentModel.Fill(this.color)));
+				OneDimensional.append(builder, bar.getPosition() - position);
+				OneDimensional.append(builder, bar.getLength());
+				position = bar.getPosition() + bar.getLength();
 			}
+			OneDimensional.append(builder, image.getSize() - position);
+			return builder.toString();
+		}
+
+		private static void append(StringBuilder builder, double value) {
+			if (builder.length() > 0) builder.append(' ');
+			if (value == Math.rint(value)) builder.append((long)value);
+			else builder.append(value);
+		}
+
+		@Override
+		public void merge(float offsetLeft, float offsetTop, DocumentModel model, String value) {
+			if (value == null) return;
+			model.add(new DocumentModel.Barcode(
+					this.getPage(),
+					offsetLeft + this.getLeft(),
+					offsetTop + this.getTop(),
+					this.getWidth(),
+					this.getHeight(),
+					this.horizontalAlign,
+					this.size,
+					this.color,
+					this.barcode.getName(),
+					OneDimensional.pattern(this.barcode.encode(value)),
+					value));
 		}
 
 		/*
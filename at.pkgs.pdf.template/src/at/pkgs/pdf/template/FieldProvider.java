@@ -17,10 +17,31 @@
 
 package at.pkgs.pdf.template;
 
+import java.util.Map;
+import java.util.TreeMap;
 import at.pkgs.pdf.builder.DocumentModel;
 
 public abstract class FieldProvider implements Iterable<String>, NamedValueProvider<Field> {
 
+	protected DocumentModel.Text text(
+			float offsetLeft,
+			float offsetTop,
+			Field field,
+			Object value) {
+		return new DocumentModel.Text(
+				field.getPage(),
+				field.getLeft() + offsetLeft,
+				field.getTop() + offsetTop,
+				field.getWidth(),
+				field.getHeight(),
+				field.getTextStyle().getLineHeight(),
+				field.getHorizontalAlign(),
+				field.getTextStyle().getFont(),
+				field.getTextStyle().getSize(),
+				field.getTextStyle().getColor(),
+				field.format(value));
+	}
+
 	public void merge(
 			float offsetLeft,
 			float offsetTop,
@@ -33,18 +54,7 @@ public abstract class FieldProvider implements Iterable<String>, NamedValueProvi
 
 			value = values.get(name);
 			field = visitor.apply(name, this.get(name), value);
-			model.add(new DocumentModel.Text(
-					field.getPage(),
-					field.getLeft() + offsetLeft,
-					field.getTop() + offsetTop,
-					field.getWidth(),
-					field.getHeight(),
-					field.getTextStyle().getLineHeight(),
-					field.getHorizontalAlign(),
-					field.getTextStyle().getFont(),
-					field.getTextStyle().getSize(),
-					field.getTextStyle().getColor(),
-					field.format(value)));
+			model.add(this.text(offsetLeft, offsetTop, field, value));
 		}
 	}
 
@@ -76,4 +86,66 @@ public abstract class FieldProvider implements Iterable<String>, NamedValueProvi
 		this.merge(0F, 0F, model, values);
 	}
 
+	/*
+	 * the same output as merge at every offset ({left, top}), but the
+	 * fields are added once as a layout per page and drawn once into the
+	 * document. a layout is named after its page (name.page) when the
+	 * fields span several pages.
+	 */
+	public void merge(
+			String name,
+			float[][] offsets,
+			DocumentModel model,
+			NamedValueProvider<Object> values,
+			FieldVisitor visitor) {
+		Map<Integer, DocumentModel.Layout> layouts;
+
+		layouts = new TreeMap<Integer, DocumentModel.Layout>();
+		for (String field : this) {
+			Object value;
+			Field current;
+			DocumentModel.Layout layout;
+
+			value = values.get(field);
+			current = visitor.apply(field, this.get(field), value);
+			layout = layouts.get(current.getPage());
+			if (layout == null) {
+				layout = new DocumentModel.Layout(name, 0F, 0F);
+				layouts.put(current.getPage(), layout);
+			}
+			layout.add(this.text(0F, 0F, current, value));
+			layout.setWidth(Math.max(layout.getWidth(), current.getLeft() + current.getWidth()));
+			layout.setHeight(Math.max(layout.getHeight(), current.getTop() + current.getHeight()));
+		}
+		for (Map.Entry<Integer, DocumentModel.Layout> entry : layouts.entrySet()) {
+			DocumentModel.Layout layout;
+
+			layout = entry.getValue();
+			if (layouts.size() > 1)
+				layout.setName(name + '.' + entry.getKey());
+			model.add(layout);
+			for (float[] offset : offsets)
+				model.add(new DocumentModel.Place(
+						entry.getKey(),
+						offset[0],
+						offset[1],
+						layout.getName()));
+		}
+	}
+
+	public void merge(
+			String name,
+			float[][] offsets,
+			DocumentModel model,
+			NamedValueProvider<Object> values) {
+		this.merge(name, offsets, model, values, new FieldVisitor() {
+
+			@Override
+			public Field apply(String name, Field field, Object value) {
+				return field;
+			}
+
+		});
+	}
+
 }
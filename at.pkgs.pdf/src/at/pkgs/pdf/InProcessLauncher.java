@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import com.lowagie.text.DocumentException;
+import at.pkgs.pdf.builder.DocumentModel;
+import at.pkgs.pdf.builder.DocumentBuilder;
+import at.pkgs.pdf.builder.FontRegistry;
+import at.pkgs.pdf.builder.PreparedTemplate;
+
+/*
+ * runs the operations in the calling thread; parsed templates and fonts
+ * stay cached between calls, so concurrent callers share the warm state.
+ */
+public class InProcessLauncher implements Launcher {
+
+	public static final int DEFAULT_CAPACITY = 8;
+
+	private static final class Cached {
+
+		private final long modified;
+
+		private final long length;
+
+		private final PreparedTemplate template;
+
+		private Cached(
+				long modified,
+				long length,
+				PreparedTemplate template) {
+			this.modified = modified;
+			this.length = length;
+			this.template = template;
+		}
+
+	}
+
+	private final Map<File, Cached> templates;
+
+	private final FontRegistry registry;
+
+	public InProcessLauncher(
+			FontRegistry registry,
+			final int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		this.templates = new LinkedHashMap<File, Cached>(16, 0.75F, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<File, Cached> eldest) {
+				return this.size() > capacity;
+			}
+
+		};
+		this.registry = registry;
+	}
+
+	public InProcessLauncher(
+			FontRegistry registry) {
+		this(registry, InProcessLauncher.DEFAULT_CAPACITY);
+	}
+
+	public InProcessLauncher() {
+		this(FontRegistry.getDefault());
+	}
+
+	public FontRegistry getFontRegistry() {
+		return this.registry;
+	}
+
+	public PreparedTemplate getTemplate(File file)
+			throws IOException {
+		File key;
+		long modified;
+		long length;
+		Cached entry;
+
+		key = file.getAbsoluteFile();
+		modified = key.lastModified();
+		length = key.length();
+		synchronized (this.templates) {
+			entry = this.templates.get(key);
+		}
+		if (entry != null && entry.modified == modified && entry.length == length)
+			return entry.template;
+		/* loaded outside the lock; a concurrent duplicate load is harmless */
+		entry = new Cached(modified, length, PreparedTemplate.load(key));
+		synchronized (this.templates) {
+			this.templates.put(key, entry);
+		}
+		return entry.template;
+	}
+
+	public void clear() {
+		synchronized (this.templates) {
+			this.templates.clear();
+		}
+	}
+
+	@Override
+	public void build(
+			File output,
+			File template,
+			DocumentModel model)
+					throws IOException {
+		PreparedTemplate prepared;
+
+		prepared = this.getTemplate(template);
+		try (
+				OutputStream stream = new BufferedOutputStream(
+						new FileOutputStream(
+								output))) {
+			DocumentBuilder builder;
+
+			builder = new DocumentBuilder(prepared, stream, this.registry);
+			try {
+				builder.merge(model);
+				builder.close();
+			}
+			finally {
+				builder.release();
+			}
+		}
+		catch (DocumentException cause) {
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public void concatenate(
+			File output,
+			Collection<File> sources)
+					throws IOException {
+		Program.concatenate(output, new ArrayList<File>(sources));
+	}
+
+	@Override
+	public void concatenate(
+			File output,
+			File... sources)
+					throws IOException {
+		this.concatenate(output, Arrays.asList(sources));
+	}
+
+	@Override
+	public void split(
+			File firstHalf,
+			File lastHalf,
+			File source,
+			int page)
+					throws IOException {
+		File temporal;
+
+		if (firstHalf == null && lastHalf == null)
+			throw new IllegalArgumentException("firstHalf and lastHalf are null");
+		temporal = null;
+		if (firstHalf == null) firstHalf = temporal = File.createTempFile(this.getClass().getName() + '.', ".pdf");
+		if (lastHalf == null) lastHalf = temporal = File.createTempFile(this.getClass().getName() + '.', ".pdf");
+		try {
+			Program.split(source, firstHalf, lastHalf, page);
+		}
+		finally {
+			if (temporal != null) temporal.delete();
+		}
+	}
+
+	@Override
+	public void extract(
+			File output,
+			File source,
+			int page,
+			int length)
+					throws IOException {
+		Program.extract(source, output, page, length);
+	}
+
+	@Override
+	public void burst(
+			String pattern,
+			File source,
+			int size)
+					throws IOException {
+		Program.burst(source, pattern, size);
+	}
+
+	@Override
+	public void burst(
+			String pattern,
+			File source,
+			int[] boundaries)
+					throws IOException {
+		Program.burst(source, pattern, boundaries);
+	}
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.io.File;
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfReader;
+import at.pkgs.pdf.builder.DocumentModel;
+import at.pkgs.pdf.builder.DocumentBuilder;
+import at.pkgs.pdf.builder.Concatenator;
+import at.pkgs.pdf.builder.PdfFiles;
+import at.pkgs.pdf.builder.SpillBuffer;
+
+/*
+ * chains build, concatenate, split and extract through named
+ * intermediates held in SpillBuffer, so only the documents written with
+ * write (and intermediates over the threshold) touch the disk.
+ */
+public class Pipeline implements Closeable {
+
+	protected static class Intermediate {
+
+		private final File file;
+
+		private final SpillBuffer buffer;
+
+		protected Intermediate(File file) {
+			this.file = file;
+			this.buffer = null;
+		}
+
+		protected Intermediate(SpillBuffer buffer) {
+			this.file = null;
+			this.buffer = buffer;
+		}
+
+		protected PdfReader open()
+				throws IOException {
+			return this.file != null ?
+					PdfFiles.open(this.file) :
+					this.buffer.createReader();
+		}
+
+		protected Concatenator.Source source() {
+			return new Concatenator.Source() {
+
+				@Override
+				public PdfReader open()
+						throws IOException {
+					return Intermediate.this.open();
+				}
+
+			};
+		}
+
+		protected void write(File destination)
+				throws IOException {
+			try (
+					OutputStream output = new BufferedOutputStream(
+							new FileOutputStream(
+									destination))) {
+				if (this.file != null)
+					Files.copy(this.file.toPath(), output);
+				else
+					this.buffer.writeTo(output);
+			}
+		}
+
+		protected void delete() {
+			if (this.buffer != null) this.buffer.delete();
+		}
+
+	}
+
+	private final InProcessLauncher launcher;
+
+	private final long threshold;
+
+	private final Map<String, Intermediate> intermediates;
+
+	public Pipeline(
+			InProcessLauncher launcher,
+			long threshold) {
+		this.launcher = launcher;
+		this.threshold = threshold;
+		this.intermediates = new HashMap<String, Intermediate>();
+	}
+
+	public Pipeline(
+			InProcessLauncher launcher) {
+		this(
+				launcher,
+				Long.getLong(
+						SpillBuffer.THRESHOLD_PROPERTY,
+						SpillBuffer.DEFAULT_THRESHOLD));
+	}
+
+	public Pipeline() {
+		this(new InProcessLauncher());
+	}
+
+	public long getThreshold() {
+		return this.threshold;
+	}
+
+	protected Intermediate get(String name)
+			throws IOException {
+		Intermediate intermediate;
+
+		intermediate = this.intermediates.get(name);
+		if (intermediate == null)
+			throw new IOException("intermediate not found: " + name);
+		return intermediate;
+	}
+
+	protected void put(String name, Intermediate intermediate) {
+		Intermediate previous;
+
+		previous = this.intermediates.put(name, intermediate);
+		if (previous != null) previous.delete();
+	}
+
+	public SpillBuffer getBuffer(String name)
+			throws IOException {
+		return this.get(name).buffer;
+	}
+
+	public Pipeline open(
+			String name,
+			File source) {
+		this.put(name, new Intermediate(source));
+		return this;
+	}
+
+	public Pipeline build(
+			String name,
+			File template,
+			DocumentModel model)
+					throws IOException {
+		SpillBuffer buffer;
+
+		buffer = new SpillBuffer(this.threshold);
+		try {
+			DocumentBuilder builder;
+
+			builder = new DocumentBuilder(
+					this.launcher.getTemplate(template),
+					buffer,
+					this.launcher.getFontRegistry());
+			try {
+				builder.merge(model);
+				builder.close();
+			}
+			finally {
+				builder.release();
+			}
+		}
+		catch (DocumentException cause) {
+			buffer.delete();
+			throw new IOException(cause);
+		}
+		catch (IOException | RuntimeException cause) {
+			buffer.delete();
+			throw cause;
+		}
+		this.put(name, new Intermediate(buffer));
+		return this;
+	}
+
+	/* the readers are opened and closed by the concatenator */
+	public Pipeline concatenate(
+			String name,
+			String... sources)
+					throws IOException {
+		List<Concatenator.Source> readers;
+		SpillBuffer buffer;
+
+		readers = new ArrayList<Concatenator.Source>(sources.length);
+		for (String source : sources) readers.add(this.get(source).source());
+		buffer = new SpillBuffer(this.threshold);
+		try {
+			Concatenator.getDefault().concatenate(buffer, readers);
+		}
+		catch (IOException | RuntimeException cause) {
+			buffer.delete();
+			throw cause;
+		}
+		this.put(name, new Intermediate(buffer));
+		return this;
+	}
+
+	protected Intermediate extract(
+			PdfReader reader,
+			int page,
+			int length)
+					throws IOException {
+		SpillBuffer buffer;
+
+		buffer = new SpillBuffer(this.threshold);
+		try {
+			Program.extract(reader, buffer, page, length);
+		}
+		catch (IOException | RuntimeException cause) {
+			buffer.delete();
+			throw cause;
+		}
+		return new Intermediate(buffer);
+	}
+
+	public Pipeline extract(
+			String name,
+			String source,
+			int page,
+			int length)
+					throws IOException {
+		PdfReader reader;
+
+		reader = this.get(source).open();
+		try {
+			this.put(name, this.extract(reader, page, length));
+		}
+		finally {
+			reader.close();
+		}
+		return this;
+	}
+
+	public Pipeline split(
+			String firstHalf,
+			String lastHalf,
+			String source,
+			int page)
+					throws IOException {
+		Intermediate origin;
+		PdfReader reader;
+		Intermediate first;
+		Intermediate last;
+		int count;
+
+		origin = this.get(source);
+		reader = origin.open();
+		try {
+			count = reader.getNumberOfPages();
+			if (page < 2 || page > count)
+				throw new IOException(
+						String.format(
+								"failed on split document at page %d" +
+								" (document has %d pages)",
+								page,
+								count));
+			first = this.extract(reader, 1, page - 1);
+		}
+		finally {
+			reader.close();
+		}
+		/* PdfCopy closes the file it copied from, the last half reads its own */
+		try {
+			reader = origin.open();
+			try {
+				last = this.extract(reader, page, count - page + 1);
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (IOException | RuntimeException cause) {
+			first.delete();
+			throw cause;
+		}
+		this.put(firstHalf, first);
+		this.put(lastHalf, last);
+		return this;
+	}
+
+	public Pipeline write(
+			String name,
+			File destination)
+					throws IOException {
+		this.get(name).write(destination);
+		return this;
+	}
+
+	public Pipeline remove(
+			String name) {
+		Intermediate intermediate;
+
+		intermediate = this.intermediates.remove(name);
+		if (intermediate != null) intermediate.delete();
+		return this;
+	}
+
+	public void execute(String... job)
+			throws IOException {
+		switch (job[0]) {
+		case "open" :
+			Program.arity(job, 2, 2);
+			this.open(job[1], new File(job[2]));
+			break;
+		case "build" :
+			Program.arity(job, 3, 3);
+			this.build(job[1], new File(job[2]), DocumentModel.parse(new File(job[3])));
+			break;
+		case "concatenate" :
+			Program.arity(job, 2, Integer.MAX_VALUE);
+			this.concatenate(job[1], Arrays.copyOfRange(job, 2, job.length));
+			break;
+		case "split" :
+			Program.arity(job, 4, 4);
+			this.split(job[1], job[2], job[3], Integer.parseInt(job[4], 10));
+			break;
+		case "extract" :
+			Program.arity(job, 4, 4);
+			this.extract(job[1], job[2], Integer.parseInt(job[3], 10), Integer.parseInt(job[4], 10));
+			break;
+		case "write" :
+			Program.arity(job, 2, 2);
+			this.write(job[1], new File(job[2]));
+			break;
+		case "remove" :
+			Program.arity(job, 1, 1);
+			this.remove(job[1]);
+			break;
+		default :
+			throw new IllegalArgumentException("unknown step: " + job[0]);
+		}
+	}
+
+	/*
+	 * one step per line, fields separated by tab, the step name followed
+	 * by its arguments in the order of the methods above; empty lines and
+	 * lines starting with # are ignored.
+	 */
+	public void execute(BufferedReader steps)
+			throws IOException {
+		String line;
+		int number;
+
+		number = 0;
+		while ((line = steps.readLine()) != null) {
+			number ++;
+			if (line.isEmpty() || line.charAt(0) == '#') continue;
+			try {
+				this.execute(line.split("\t", -1));
+			}
+			catch (IOException | RuntimeException cause) {
+				throw new IOException("failed on step at line " + number, cause);
+			}
+		}
+	}
+
+	public void execute(File steps)
+			throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(steps.toPath(), StandardCharsets.UTF_8)) {
+			this.execute(reader);
+		}
+	}
+
+	@Override
+	public void close() {
+		for (Intermediate intermediate : this.intermediates.values()) intermediate.delete();
+		this.intermediates.clear();
+	}
+
+}
@@ -17,22 +17,33 @@
 
 package at.pkgs.pdf;
 
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Arrays;
 import java.io.File;
+import java.io.BufferedReader;
 import java.io.OutputStream;
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
+import java.io.FileDescriptor;
 import java.io.PrintStream;
 import java.io.IOException;
 import java.nio.file.Files;
-import com.lowagie.text.Document;
+import java.nio.charset.StandardCharsets;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfReader;
-import com.lowagie.text.pdf.PdfWriter;
-import com.lowagie.text.pdf.PdfContentByte;
-import com.lowagie.tools.ConcatPdf;
-import com.lowagie.tools.SplitPdf;
+import at.pkgs.pdf.builder.DocumentModel;
 import at.pkgs.pdf.builder.DocumentBuilder;
+import at.pkgs.pdf.builder.BatchBuilder;
+import at.pkgs.pdf.builder.SharedBatchBuilder;
+import at.pkgs.pdf.builder.PdfFiles;
+import at.pkgs.pdf.builder.PreparedTemplate;
+import at.pkgs.pdf.builder.Compression;
+import at.pkgs.pdf.builder.Concatenator;
+import at.pkgs.pdf.builder.Extractor;
+import at.pkgs.pdf.builder.SlowRenderLogger;
 
 public class Program {
 
@@ -51,22 +62,21 @@ public class Program {
 
 	}
 
-	private static final PrintStream NULL_PRINT_WRITER = new PrintStream(
-			new OutputStream() {
-
-				@Override
-				public void write(int value) {
-					// do nothing
-				}
-
-			});
-
 	public static void usage(PrintStream output) {
 		output.println("usage:");
 		output.println("[-build] template destination model");
+		output.println("-stream template destination model");
+		output.println("-optimize [-report] template destination model");
+		output.println("-batch template destination models...");
+		output.println("-combine template destination models...");
 		output.println("-concatenate files... destination");
+		output.println("-compact files... destination");
 		output.println("-split source file1 file2 page");
-		output.println("-extract source destination page length");
+		output.println("-extract source (destination page length)...");
+		output.println("-burst source pattern (size | at pages...)");
+		output.println("-jobs manifest [status]");
+		output.println("-pipeline steps [threshold]");
+		output.println("-worker [port]");
 	}
 
 	public static void copy(String source, String destination) throws IOException {
@@ -84,99 +94,533 @@ public class Program {
 		DocumentBuilder.main(arguments);
 	}
 
-	public static void concatenate(String... arguments) {
-		PrintStream out;
+	public static void stream(String... arguments) throws IOException {
+		if (arguments.length != 3) {
+			Program.usage(System.err);
+			System.exit(1);
+			return;
+		}
+		try {
+			DocumentBuilder.stream(
+					new File(arguments[0]),
+					new File(arguments[1]),
+					new File(arguments[2]));
+		}
+		catch (DocumentException cause) {
+			throw new IOException(cause);
+		}
+	}
+
+	/* -report renders a baseline as well to print the bytes saved */
+	public static void optimize(String... arguments) throws IOException {
+		boolean report;
+		int start;
+
+		report = arguments.length > 0 && arguments[0].equals("-report");
+		start = report ? 1 : 0;
+		if (arguments.length - start != 3) {
+			Program.usage(System.err);
+			System.exit(1);
+			return;
+		}
+		try {
+			if (report)
+				System.out.println(
+						DocumentBuilder.optimize(
+								PreparedTemplate.load(new File(arguments[start])),
+								new File(arguments[start + 1]),
+								Compression.OPTIMIZED,
+								DocumentModel.parse(new File(arguments[start + 2]))));
+			else
+				DocumentBuilder.merge(
+						PreparedTemplate.load(new File(arguments[start])),
+						new File(arguments[start + 1]),
+						Compression.OPTIMIZED,
+						DocumentModel.parse(new File(arguments[start + 2])));
+		}
+		catch (DocumentException cause) {
+			throw new IOException(cause);
+		}
+	}
+
+	protected static Iterator<DocumentModel> models(final String[] arguments, final int start) {
+		return new Iterator<DocumentModel>() {
+
+			private int index = start;
+
+			@Override
+			public boolean hasNext() {
+				return this.index < arguments.length;
+			}
+
+			@Override
+			public DocumentModel next() {
+				if (!this.hasNext()) throw new NoSuchElementException();
+				return DocumentModel.parse(new File(arguments[this.index ++]));
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		};
+	}
+
+	public static void batch(String... arguments) throws IOException {
+		if (arguments.length < 3) {
+			Program.usage(System.err);
+			System.exit(1);
+			return;
+		}
+		try {
+			BatchBuilder.merge(
+					new File(arguments[0]),
+					new File(arguments[1]),
+					Program.models(arguments, 2));
+		}
+		catch (DocumentException cause) {
+			throw new IOException(cause);
+		}
+	}
+
+	public static void combine(String... arguments) throws IOException {
+		if (arguments.length < 3) {
+			Program.usage(System.err);
+			System.exit(1);
+			return;
+		}
+		try {
+			SharedBatchBuilder.merge(
+					new File(arguments[0]),
+					new File(arguments[1]),
+					Program.models(arguments, 2));
+		}
+		catch (DocumentException cause) {
+			throw new IOException(cause);
+		}
+	}
+
+	protected static void concatenate(boolean deduplicate, String... arguments) throws IOException {
+		List<File> sources;
+		int index;
 
 		if (arguments.length < 2) {
 			Program.usage(System.err);
 			System.exit(1);
 			return;
 		}
-		out = System.out;
-		System.setOut(Program.NULL_PRINT_WRITER);
-		ConcatPdf.main(arguments);
-		System.setOut(out);
+		sources = new ArrayList<File>();
+		for (index = 0; index < arguments.length - 1; index ++)
+			sources.add(new File(arguments[index]));
+		Program.concatenate(new File(arguments[arguments.length - 1]), sources, deduplicate);
+	}
+
+	public static void concatenate(String... arguments) throws IOException {
+		Program.concatenate(false, arguments);
+	}
+
+	public static void compact(String... arguments) throws IOException {
+		Program.concatenate(true, arguments);
 	}
 
-	public static void split(String... arguments) {
-		PrintStream out;
+	/*
+	 * deduplicate: streams with identical content (font programs, images,
+	 * template forms) are written once at the cost of hashing them.
+	 */
+	/* the readers are left open like those given to extract */
+	public static void concatenate(
+			OutputStream destination,
+			List<PdfReader> sources,
+			boolean deduplicate)
+					throws IOException {
+		List<Concatenator.Source> readers;
 
+		readers = new ArrayList<Concatenator.Source>(sources.size());
+		for (PdfReader reader : sources) readers.add(Concatenator.Source.of(reader));
+		Concatenator.getDefault().concatenate(destination, readers, deduplicate);
+	}
+
+	public static void concatenate(
+			OutputStream destination,
+			List<PdfReader> sources)
+					throws IOException {
+		Program.concatenate(destination, sources, false);
+	}
+
+	public static void concatenate(
+			File destination,
+			List<File> sources,
+			boolean deduplicate)
+					throws IOException {
+		Concatenator.getDefault().concatenate(
+				destination,
+				Concatenator.Source.of(sources),
+				deduplicate);
+	}
+
+	public static void concatenate(
+			File destination,
+			List<File> sources)
+					throws IOException {
+		Program.concatenate(destination, sources, false);
+	}
+
+	public static void split(
+			File source,
+			File firstHalf,
+			File lastHalf,
+			int page)
+					throws IOException {
+		PdfReader reader;
+		int count;
+
+		reader = PdfFiles.open(source);
+		try {
+			count = reader.getNumberOfPages();
+			if (page < 2 || page > count)
+				throw new IOException(
+						String.format(
+								"failed on split document at page %d" +
+								" (document has %d pages)",
+								page,
+								count));
+			Program.extract(reader, firstHalf, 1, page - 1);
+		}
+		finally {
+			reader.close();
+		}
+		/* PdfCopy closes the file it copied from, the last half reads its own */
+		reader = PdfFiles.open(source);
+		try {
+			Program.extract(reader, lastHalf, page, count - page + 1);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	public static void split(String... arguments) throws IOException {
 		if (arguments.length != 4) {
 			Program.usage(System.err);
 			System.exit(1);
 			return;
 		}
-		out = System.out;
-		System.setOut(Program.NULL_PRINT_WRITER);
-		SplitPdf.main(arguments);
-		System.setOut(out);
+		Program.split(
+				new File(arguments[0]),
+				new File(arguments[1]),
+				new File(arguments[2]),
+				Integer.parseInt(arguments[3], 10));
+	}
+
+	public static void extract(
+			PdfReader reader,
+			OutputStream destination,
+			int page,
+			int length)
+					throws IOException {
+		Extractor.extract(reader, destination, page, length);
+	}
+
+	protected static void extract(
+			PdfReader reader,
+			File destination,
+			int page,
+			int length)
+					throws IOException {
+		Extractor.extract(reader, destination, page, length);
+	}
+
+	public static void extract(
+			File source,
+			File destination,
+			int page,
+			int length)
+					throws IOException {
+		PdfReader reader;
+
+		reader = PdfFiles.open(source);
+		try {
+			Program.extract(reader, destination, page, length);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	public static void extract(
+			File source,
+			List<Extractor.Range> ranges)
+					throws IOException {
+		Extractor extractor;
+
+		extractor = new Extractor();
+		try {
+			extractor.extract(source, ranges);
+		}
+		finally {
+			extractor.shutdown();
+		}
 	}
 
 	public static void extract(String... arguments) throws IOException {
-		String source;
-		String destination;
-		int page;
-		int length;
+		List<Extractor.Range> ranges;
+		int index;
 
-		if (arguments.length != 4) {
+		if (arguments.length < 4 || (arguments.length - 1) % 3 != 0) {
 			Program.usage(System.err);
 			System.exit(1);
 			return;
 		}
-		source = arguments[0];
-		destination = arguments[1];
-		page = Integer.parseInt(arguments[2], 10);
-		length = Integer.parseInt(arguments[3], 10);
+		if (arguments.length == 4) {
+			Program.extract(
+					new File(arguments[0]),
+					new File(arguments[1]),
+					Integer.parseInt(arguments[2], 10),
+					Integer.parseInt(arguments[3], 10));
+			return;
+		}
+		ranges = new ArrayList<Extractor.Range>();
+		for (index = 1; index < arguments.length; index += 3)
+			ranges.add(
+					new Extractor.Range(
+							Integer.parseInt(arguments[index + 1], 10),
+							Integer.parseInt(arguments[index + 2], 10),
+							new File(arguments[index])));
+		Program.extract(new File(arguments[0]), ranges);
+	}
+
+	public static void burst(
+			File source,
+			String pattern,
+			int size)
+					throws IOException {
+		Extractor extractor;
+
+		extractor = new Extractor();
+		try {
+			extractor.burst(source, pattern, size);
+		}
+		finally {
+			extractor.shutdown();
+		}
+	}
+
+	public static void burst(
+			File source,
+			String pattern,
+			int[] boundaries)
+					throws IOException {
+		Extractor extractor;
+
+		extractor = new Extractor();
 		try {
-			PdfReader reader;
-			PdfWriter writer;
-			Document document;
-			PdfContentByte content;
-			int index;
-
-			reader = new PdfReader(source);
-			document = new Document(reader.getPageSizeWithRotation(page));
-			writer = PdfWriter.getInstance(document, new BufferedOutputStream(new FileOutputStream(destination)));
-			document.open();
-			content = writer.getDirectContent();
-			for (index = 0; index < length; index ++) {
-				document.setPageSize(reader.getPageSizeWithRotation(page + index));
-				document.newPage();
-				switch (reader.getPageRotation(page + index)) {
-				case 90 :
-				case 270 :
-					content.addTemplate(
-							writer.getImportedPage(reader, page + index),
-							0F,
-							-1F,
-							1F,
-							0F,
-							0F,
-							reader.getPageSizeWithRotation(page + index).getHeight());
-					break;
-				default :
-					content.addTemplate(
-							writer.getImportedPage(reader, page + index),
-							1F,
-							0F,
-							0F,
-							1F,
-							0F,
-							0F);
-					break;
+			extractor.burst(source, pattern, boundaries);
+		}
+		finally {
+			extractor.shutdown();
+		}
+	}
+
+	protected static int[] pages(String[] arguments, int start) {
+		int[] pages;
+		int index;
+
+		pages = new int[arguments.length - start];
+		for (index = 0; index < pages.length; index ++)
+			pages[index] = Integer.parseInt(arguments[start + index], 10);
+		return pages;
+	}
+
+	/*
+	 * pattern: formatted with the chunk number (from 1), the first page
+	 * and the last page of the chunk, e.g. "out/part-%04d.pdf".
+	 */
+	public static void burst(String... arguments) throws IOException {
+		if (arguments.length < 3 ||
+				(arguments[2].equals("at") ?
+						arguments.length < 4 :
+						arguments.length != 3)) {
+			Program.usage(System.err);
+			System.exit(1);
+			return;
+		}
+		if (arguments[2].equals("at"))
+			Program.burst(
+					new File(arguments[0]),
+					arguments[1],
+					Program.pages(arguments, 3));
+		else
+			Program.burst(
+					new File(arguments[0]),
+					arguments[1],
+					Integer.parseInt(arguments[2], 10));
+	}
+
+	protected static void arity(String[] job, int minimum, int maximum) {
+		if (job.length - 1 < minimum || job.length - 1 > maximum)
+			throw new IllegalArgumentException("wrong number of arguments for " + job[0]);
+	}
+
+	public static void execute(Launcher launcher, String... job) throws IOException {
+		List<File> sources;
+		int index;
+
+		switch (job[0]) {
+		case "build" :
+			Program.arity(job, 3, 3);
+			launcher.build(
+					new File(job[2]),
+					new File(job[1]),
+					DocumentModel.parse(new File(job[3])));
+			break;
+		case "concatenate" :
+			Program.arity(job, 2, Integer.MAX_VALUE);
+			sources = new ArrayList<File>();
+			for (index = 1; index < job.length - 1; index ++)
+				sources.add(new File(job[index]));
+			launcher.concatenate(new File(job[job.length - 1]), sources);
+			break;
+		case "split" :
+			Program.arity(job, 4, 4);
+			launcher.split(
+					new File(job[2]),
+					new File(job[3]),
+					new File(job[1]),
+					Integer.parseInt(job[4], 10));
+			break;
+		case "extract" :
+			Program.arity(job, 4, 4);
+			launcher.extract(
+					new File(job[2]),
+					new File(job[1]),
+					Integer.parseInt(job[3], 10),
+					Integer.parseInt(job[4], 10));
+			break;
+		case "burst" :
+			if (job.length > 3 && job[3].equals("at")) {
+				Program.arity(job, 4, Integer.MAX_VALUE);
+				launcher.burst(job[2], new File(job[1]), Program.pages(job, 4));
+				break;
+			}
+			Program.arity(job, 3, 3);
+			launcher.burst(job[2], new File(job[1]), Integer.parseInt(job[3], 10));
+			break;
+		default :
+			throw new IllegalArgumentException("unknown job: " + job[0]);
+		}
+	}
+
+	/*
+	 * manifest: one job per line, fields separated by tab, the operation
+	 * name followed by the same arguments as the command line option;
+	 * empty lines and lines starting with # are ignored.
+	 * status: one line per job, line number, "ok" or "failed" and message.
+	 */
+	protected static int jobs(
+			InProcessLauncher launcher,
+			BufferedReader manifest,
+			PrintStream status)
+					throws IOException {
+		String line;
+		int number;
+		int failures;
+
+		number = 0;
+		failures = 0;
+		while ((line = manifest.readLine()) != null) {
+			number ++;
+			if (line.isEmpty() || line.charAt(0) == '#') continue;
+			try {
+				Program.execute(launcher, line.split("\t", -1));
+				status.println(number + "\tok");
+			}
+			catch (IOException | RuntimeException cause) {
+				failures ++;
+				status.println(number + "\tfailed\t" + String.valueOf(cause).replaceAll("[\\t\\r\\n]+", " "));
+			}
+		}
+		return failures;
+	}
+
+	public static void jobs(String... arguments) throws IOException {
+		InProcessLauncher launcher;
+		int failures;
+
+		if (arguments.length < 1 || arguments.length > 2) {
+			Program.usage(System.err);
+			System.exit(1);
+			return;
+		}
+		launcher = new InProcessLauncher();
+		try (
+				BufferedReader manifest = Files.newBufferedReader(
+						new File(arguments[0]).toPath(),
+						StandardCharsets.UTF_8)) {
+			if (arguments.length < 2) {
+				PrintStream status;
+
+				/* standard output belongs to the caller, flush it but keep it open */
+				status = new PrintStream(System.out, true, "UTF-8");
+				failures = Program.jobs(launcher, manifest, status);
+				status.flush();
+			}
+			else {
+				try (
+						PrintStream status = new PrintStream(
+								new FileOutputStream(arguments[1]),
+								false,
+								"UTF-8")) {
+					failures = Program.jobs(launcher, manifest, status);
 				}
 			}
-			document.close();
-			reader.close();
 		}
-		catch (DocumentException cause) {
-			throw new IOException(cause);
+		if (failures > 0) {
+			System.exit(2);
+			return;
 		}
 	}
 
+	public static void pipeline(String... arguments) throws IOException {
+		if (arguments.length < 1 || arguments.length > 2) {
+			Program.usage(System.err);
+			System.exit(1);
+			return;
+		}
+		try (
+				Pipeline pipeline = arguments.length < 2 ?
+						new Pipeline() :
+						new Pipeline(new InProcessLauncher(), Long.parseLong(arguments[1], 10))) {
+			pipeline.execute(new File(arguments[0]));
+		}
+	}
+
+	public static void worker(String... arguments) throws IOException {
+		OutputStream protocol;
+
+		if (arguments.length > 1) {
+			Program.usage(System.err);
+			System.exit(1);
+			return;
+		}
+		if (arguments.length == 1) {
+			Worker.listen(Integer.parseInt(arguments[0], 10), new InProcessLauncher());
+			return;
+		}
+		/* standard output carries the protocol, keep stray prints off it */
+		protocol = new FileOutputStream(FileDescriptor.out);
+		System.setOut(System.err);
+		new Worker(System.in, protocol, new InProcessLauncher()).serve();
+	}
+
 	public static void main(String... arguments) throws IOException {
+		Long threshold;
 		String[] parameters;
 
+		/* the library renders without a listener unless the application installs one */
+		threshold = Long.getLong(SlowRenderLogger.THRESHOLD_PROPERTY);
+		if (threshold != null)
+			DocumentBuilder.setDefaultListener(new SlowRenderLogger(threshold));
 		if (arguments.length <= 0) {
 			Program.usage(System.err);
 			System.exit(1);
@@ -194,15 +638,42 @@ public class Program {
 		case "build" :
 			Program.build(parameters);
 			break;
+		case "stream" :
+			Program.stream(parameters);
+			break;
+		case "optimize" :
+			Program.optimize(parameters);
+			break;
+		case "batch" :
+			Program.batch(parameters);
+			break;
+		case "combine" :
+			Program.combine(parameters);
+			break;
 		case "concatenate" :
 			Program.concatenate(parameters);
 			break;
+		case "compact" :
+			Program.compact(parameters);
+			break;
 		case "split" :
 			Program.split(parameters);
 			break;
 		case "extract" :
 			Program.extract(parameters);
 			break;
+		case "burst" :
+			Program.burst(parameters);
+			break;
+		case "jobs" :
+			Program.jobs(parameters);
+			break;
+		case "pipeline" :
+			Program.pipeline(parameters);
+			break;
+		case "worker" :
+			Program.worker(parameters);
+			break;
 		default :
 			Program.usage(System.err);
 			System.exit(1);
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.InetAddress;
+import at.pkgs.pdf.builder.DocumentModel;
+
+/*
+ * serves WorkerProtocol requests; exceptions are reported per job, errors
+ * (out of memory, linkage) end the worker so that the pool replaces it.
+ */
+public class Worker implements Runnable {
+
+	private final DataInputStream input;
+
+	private final DataOutputStream output;
+
+	private final InProcessLauncher launcher;
+
+	public Worker(
+			InputStream input,
+			OutputStream output,
+			InProcessLauncher launcher) {
+		this.input = new DataInputStream(new BufferedInputStream(input));
+		this.output = new DataOutputStream(new BufferedOutputStream(output));
+		this.launcher = launcher;
+	}
+
+	protected interface Job {
+
+		public void execute() throws IOException;
+
+	}
+
+	/*
+	 * reads the whole request frame before anything runs, so that an
+	 * EOFException from the job itself is never taken for a broken stream.
+	 */
+	protected Job read(int operation)
+			throws IOException {
+		switch (operation) {
+		case WorkerProtocol.BUILD : {
+			final File template;
+			final File output;
+			final byte[] model;
+
+			template = new File(WorkerProtocol.readString(this.input));
+			output = new File(WorkerProtocol.readString(this.input));
+			model = WorkerProtocol.readBytes(this.input);
+			return new Job() {
+
+				@Override
+				public void execute() throws IOException {
+					Worker.this.launcher.build(
+							output,
+							template,
+							DocumentModel.parse(new ByteArrayInputStream(model)));
+				}
+
+			};
+		}
+		case WorkerProtocol.CONCATENATE : {
+			final File output;
+			final List<File> sources;
+			int count;
+
+			output = new File(WorkerProtocol.readString(this.input));
+			count = this.input.readInt();
+			sources = new ArrayList<File>(count);
+			while (count -- > 0)
+				sources.add(new File(WorkerProtocol.readString(this.input)));
+			return new Job() {
+
+				@Override
+				public void execute() throws IOException {
+					Worker.this.launcher.concatenate(output, sources);
+				}
+
+			};
+		}
+		case WorkerProtocol.SPLIT : {
+			final File source;
+			final File firstHalf;
+			final File lastHalf;
+			final int page;
+
+			source = new File(WorkerProtocol.readString(this.input));
+			firstHalf = new File(WorkerProtocol.readString(this.input));
+			lastHalf = new File(WorkerProtocol.readString(this.input));
+			page = this.input.readInt();
+			return new Job() {
+
+				@Override
+				public void execute() throws IOException {
+					Worker.this.launcher.split(firstHalf, lastHalf, source, page);
+				}
+
+			};
+		}
+		case WorkerProtocol.EXTRACT : {
+			final File source;
+			final File output;
+			final int page;
+			final int length;
+
+			source = new File(WorkerProtocol.readString(this.input));
+			output = new File(WorkerProtocol.readString(this.input));
+			page = this.input.readInt();
+			length = this.input.readInt();
+			return new Job() {
+
+				@Override
+				public void execute() throws IOException {
+					Worker.this.launcher.extract(output, source, page, length);
+				}
+
+			};
+		}
+		case WorkerProtocol.BURST : {
+			final File source;
+			final String pattern;
+			final int size;
+			final int[] boundaries;
+			int index;
+
+			source = new File(WorkerProtocol.readString(this.input));
+			pattern = WorkerProtocol.readString(this.input);
+			size = this.input.readInt();
+			boundaries = new int[this.input.readInt()];
+			for (index = 0; index < boundaries.length; index ++)
+				boundaries[index] = this.input.readInt();
+			return new Job() {
+
+				@Override
+				public void execute() throws IOException {
+					if (size > 0)
+						Worker.this.launcher.burst(pattern, source, size);
+					else
+						Worker.this.launcher.burst(pattern, source, boundaries);
+				}
+
+			};
+		}
+		default :
+			throw new IOException("unknown operation: " + operation);
+		}
+	}
+
+	protected void respond(int status, String message)
+			throws IOException {
+		Runtime runtime;
+
+		runtime = Runtime.getRuntime();
+		this.output.writeInt(status);
+		WorkerProtocol.writeString(this.output, message);
+		this.output.writeLong(runtime.totalMemory() - runtime.freeMemory());
+		this.output.flush();
+	}
+
+	public void serve()
+			throws IOException {
+		while (true) {
+			int operation;
+			Job job;
+
+			try {
+				operation = this.input.readInt();
+			}
+			catch (EOFException ignored) {
+				return;
+			}
+			if (operation == WorkerProtocol.QUIT) return;
+			/* a truncated frame leaves the stream out of step and ends the worker */
+			job = this.read(operation);
+			try {
+				job.execute();
+			}
+			catch (RuntimeException | IOException cause) {
+				this.respond(WorkerProtocol.FAILED, String.valueOf(cause));
+				continue;
+			}
+			this.respond(WorkerProtocol.SUCCEEDED, null);
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			this.serve();
+		}
+		catch (IOException cause) {
+			cause.printStackTrace(System.err);
+		}
+	}
+
+	public static void listen(
+			int port,
+			InProcessLauncher launcher)
+					throws IOException {
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			while (true) {
+				final Socket socket;
+				Thread thread;
+
+				socket = server.accept();
+				thread = new Thread(new Worker(socket.getInputStream(), socket.getOutputStream(), launcher) {
+
+					@Override
+					public void run() {
+						try {
+							super.run();
+						}
+						finally {
+							try {
+								socket.close();
+							}
+							catch (IOException ignored) {
+								// do nothing
+							}
+						}
+					}
+
+				}, "Worker-" + socket.getPort());
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+	}
+
+}
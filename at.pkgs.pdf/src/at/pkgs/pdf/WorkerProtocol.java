@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * REQUEST: operation (int), then
+ *   BUILD: template, output (string), model (bytes, encoded DocumentModel)
+ *   CONCATENATE: output (string), count (int), sources (string)...
+ *   SPLIT: source, firstHalf, lastHalf (string), page (int)
+ *   EXTRACT: source, output (string), page, length (int)
+ *   BURST: source, pattern (string), size, count (int), boundaries (int)...,
+ *     size is 0 when the boundaries are given
+ *   QUIT: nothing, the worker exits without response
+ * RESPONSE: status (int), message (string, null on success),
+ *   used heap of the worker (long)
+ */
+public final class WorkerProtocol {
+
+	public static final int QUIT = 0;
+
+	public static final int BUILD = 1;
+
+	public static final int CONCATENATE = 2;
+
+	public static final int SPLIT = 3;
+
+	public static final int EXTRACT = 4;
+
+	public static final int BURST = 5;
+
+	public static final int SUCCEEDED = 0;
+
+	public static final int FAILED = 1;
+
+	private WorkerProtocol() {
+		// do nothing
+	}
+
+	public static void writeBytes(DataOutputStream output, byte[] value)
+			throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+			return;
+		}
+		output.writeInt(value.length);
+		output.write(value);
+	}
+
+	public static byte[] readBytes(DataInputStream input)
+			throws IOException {
+		int length;
+		byte[] value;
+
+		length = input.readInt();
+		if (length < 0) return null;
+		value = new byte[length];
+		input.readFully(value);
+		return value;
+	}
+
+	public static void writeString(DataOutputStream output, String value)
+			throws IOException {
+		WorkerProtocol.writeBytes(
+				output,
+				value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static String readString(DataInputStream input)
+			throws IOException {
+		byte[] value;
+
+		value = WorkerProtocol.readBytes(input);
+		return value == null ? null : new String(value, StandardCharsets.UTF_8);
+	}
+
+}
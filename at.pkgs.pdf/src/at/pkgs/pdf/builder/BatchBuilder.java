@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.Iterator;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfCopy;
+
+public class BatchBuilder {
+
+	private final PreparedTemplate template;
+
+	private final FontRegistry registry;
+
+	private final Document document;
+
+	private final PdfCopy copy;
+
+	private final ByteArrayOutputStream buffer;
+
+	private int count;
+
+	public BatchBuilder(
+			PreparedTemplate template,
+			OutputStream destination,
+			FontRegistry registry)
+					throws DocumentException {
+		this.template = template;
+		this.registry = registry;
+		this.document = new Document();
+		this.copy = new PdfCopy(this.document, destination);
+		this.buffer = new ByteArrayOutputStream(template.getLength() * 2);
+		this.count = 0;
+		this.document.open();
+	}
+
+	public BatchBuilder(
+			PreparedTemplate template,
+			OutputStream destination)
+					throws DocumentException {
+		this(template, destination, FontRegistry.getDefault());
+	}
+
+	public int getCount() {
+		return this.count;
+	}
+
+	protected void append(PdfReader reader)
+			throws IOException, DocumentException {
+		int page;
+
+		try {
+			for (page = 1; page <= reader.getNumberOfPages(); page ++)
+				this.copy.addPage(this.copy.getImportedPage(reader, page));
+			this.copy.freeReader(reader);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	public void add(DocumentModel... models)
+			throws IOException, DocumentException {
+		DocumentBuilder builder;
+
+		this.buffer.reset();
+		builder = new DocumentBuilder(this.template, this.buffer, this.registry);
+		try {
+			for (DocumentModel model : models) builder.merge(model);
+			builder.close();
+		}
+		finally {
+			builder.release();
+		}
+		this.add(this.buffer.toByteArray());
+	}
+
+	public void add(byte[] document)
+			throws IOException, DocumentException {
+		this.append(new PdfReader(document));
+		this.count ++;
+	}
+
+	public void close()
+			throws IOException {
+		if (this.count > 0) {
+			this.document.close();
+			return;
+		}
+		try {
+			this.document.close();
+		}
+		catch (RuntimeException ignored) {
+			/* the writer refuses a document without pages */
+		}
+		throw new IOException("no document added");
+	}
+
+	public static int merge(
+			PreparedTemplate template,
+			OutputStream destination,
+			Iterator<DocumentModel> models)
+					throws IOException, DocumentException {
+		BatchBuilder builder;
+
+		builder = new BatchBuilder(template, destination);
+		while (models.hasNext()) builder.add(models.next());
+		builder.close();
+		return builder.getCount();
+	}
+
+	public static int merge(
+			File template,
+			File destination,
+			Iterator<DocumentModel> models)
+					throws IOException, DocumentException {
+		PreparedTemplate prepared;
+
+		prepared = PreparedTemplate.load(template);
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			return BatchBuilder.merge(prepared, output, models);
+		}
+	}
+
+}
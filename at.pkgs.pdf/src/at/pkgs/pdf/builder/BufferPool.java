@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*
+ * output buffers are sized from a running average of the documents
+ * rendered for the same key (usually the PreparedTemplate), and their
+ * arrays return to the pool on release for the next render.
+ */
+public class BufferPool {
+
+	public static final int DEFAULT_MAXIMUM_BUFFERS = 16;
+
+	public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024L * 1024L;
+
+	public static final int MINIMUM_CAPACITY = 8192;
+
+	public class Buffer extends OutputStream {
+
+		private final Object key;
+
+		private byte[] array;
+
+		private int count;
+
+		private boolean closed;
+
+		protected Buffer(Object key, byte[] array) {
+			this.key = key;
+			this.array = array;
+			this.count = 0;
+			this.closed = false;
+		}
+
+		protected void ensure(int capacity)
+				throws IOException {
+			byte[] grown;
+
+			if (this.array == null)
+				throw new IOException("buffer released");
+			if (capacity < 0)
+				throw new IOException("buffer too large");
+			if (capacity <= this.array.length) return;
+			grown = BufferPool.this.take((int)Math.max(capacity, Math.min(this.array.length * 2L, Integer.MAX_VALUE - 8)));
+			System.arraycopy(this.array, 0, grown, 0, this.count);
+			BufferPool.this.give(this.array);
+			this.array = grown;
+		}
+
+		@Override
+		public void write(int value)
+				throws IOException {
+			if (this.closed)
+				throw new IOException("buffer closed");
+			this.ensure(this.count + 1);
+			this.array[this.count ++] = (byte)value;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length)
+				throws IOException {
+			if (this.closed)
+				throw new IOException("buffer closed");
+			this.ensure(this.count + length);
+			System.arraycopy(bytes, offset, this.array, this.count, length);
+			this.count += length;
+		}
+
+		@Override
+		public void close() {
+			if (this.closed) return;
+			this.closed = true;
+			if (this.key != null) BufferPool.this.record(this.key, this.count);
+		}
+
+		public int size() {
+			return this.count;
+		}
+
+		protected byte[] array() {
+			if (this.array == null)
+				throw new IllegalStateException("buffer released");
+			return this.array;
+		}
+
+		public byte[] toByteArray() {
+			byte[] bytes;
+
+			bytes = new byte[this.count];
+			System.arraycopy(this.array(), 0, bytes, 0, this.count);
+			return bytes;
+		}
+
+		/* the view is valid until release */
+		public ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(this.array(), 0, this.count).asReadOnlyBuffer();
+		}
+
+		public void writeTo(OutputStream destination)
+				throws IOException {
+			destination.write(this.array(), 0, this.count);
+		}
+
+		public void writeTo(WritableByteChannel destination)
+				throws IOException {
+			ByteBuffer buffer;
+
+			buffer = ByteBuffer.wrap(this.array(), 0, this.count);
+			while (buffer.hasRemaining()) destination.write(buffer);
+		}
+
+		public void release() {
+			byte[] array;
+
+			this.closed = true;
+			array = this.array;
+			this.array = null;
+			if (array != null) BufferPool.this.give(array);
+		}
+
+	}
+
+	private static final class Estimate {
+
+		private long average;
+
+		private long samples;
+
+	}
+
+	private static final BufferPool DEFAULT = new BufferPool();
+
+	private final int maximumBuffers;
+
+	private final long maximumBytes;
+
+	private final TreeMap<Integer, List<byte[]>> free;
+
+	private final Map<Object, Estimate> estimates;
+
+	private int buffers;
+
+	private long bytes;
+
+	public BufferPool(
+			int maximumBuffers,
+			long maximumBytes) {
+		this.maximumBuffers = maximumBuffers;
+		this.maximumBytes = maximumBytes;
+		this.free = new TreeMap<Integer, List<byte[]>>();
+		this.estimates = new WeakHashMap<Object, Estimate>();
+		this.buffers = 0;
+		this.bytes = 0L;
+	}
+
+	public BufferPool() {
+		this(BufferPool.DEFAULT_MAXIMUM_BUFFERS, BufferPool.DEFAULT_MAXIMUM_BYTES);
+	}
+
+	protected synchronized byte[] take(int capacity) {
+		Map.Entry<Integer, List<byte[]>> entry;
+		byte[] array;
+
+		entry = this.free.ceilingEntry(capacity);
+		if (entry == null || entry.getKey() > capacity * 2L) return new byte[capacity];
+		array = entry.getValue().remove(entry.getValue().size() - 1);
+		if (entry.getValue().isEmpty()) this.free.remove(entry.getKey());
+		this.buffers --;
+		this.bytes -= array.length;
+		return array;
+	}
+
+	protected synchronized void give(byte[] array) {
+		List<byte[]> list;
+
+		if (this.buffers >= this.maximumBuffers) return;
+		if (this.bytes + array.length > this.maximumBytes) return;
+		list = this.free.get(array.length);
+		if (list == null) {
+			list = new ArrayList<byte[]>();
+			this.free.put(array.length, list);
+		}
+		list.add(array);
+		this.buffers ++;
+		this.bytes += array.length;
+	}
+
+	protected synchronized void record(Object key, int size) {
+		Estimate estimate;
+
+		estimate = this.estimates.get(key);
+		if (estimate == null) {
+			estimate = new Estimate();
+			this.estimates.put(key, estimate);
+		}
+		estimate.samples ++;
+		if (estimate.samples == 1L)
+			estimate.average = size;
+		else
+			estimate.average += (size - estimate.average) / Math.min(estimate.samples, 16L);
+	}
+
+	public synchronized int estimate(Object key) {
+		Estimate estimate;
+
+		estimate = (key == null) ? null : this.estimates.get(key);
+		if (estimate == null) return BufferPool.MINIMUM_CAPACITY;
+		/* a quarter of headroom keeps most documents within one array */
+		return (int)Math.min(
+				Math.max(estimate.average + estimate.average / 4L, BufferPool.MINIMUM_CAPACITY),
+				Integer.MAX_VALUE - 8);
+	}
+
+	public Buffer acquire(Object key) {
+		return new Buffer(key, this.take(this.estimate(key)));
+	}
+
+	public Buffer acquire() {
+		return this.acquire(null);
+	}
+
+	public synchronized void clear() {
+		this.free.clear();
+		this.buffers = 0;
+		this.bytes = 0L;
+	}
+
+	public static BufferPool getDefault() {
+		return BufferPool.DEFAULT;
+	}
+
+}
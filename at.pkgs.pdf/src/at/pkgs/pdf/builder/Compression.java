@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.io.IOException;
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfObject;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfStamper;
+import com.lowagie.text.pdf.PdfStream;
+import com.lowagie.text.pdf.PRStream;
+
+public class Compression {
+
+	public static final class Report {
+
+		private final long original;
+
+		private final long optimized;
+
+		public Report(
+				long original,
+				long optimized) {
+			this.original = original;
+			this.optimized = optimized;
+		}
+
+		public long getOriginal() {
+			return this.original;
+		}
+
+		public long getOptimized() {
+			return this.optimized;
+		}
+
+		public long getSaved() {
+			return this.original - this.optimized;
+		}
+
+		public double getRatio() {
+			return this.original == 0L ? 0D : (double)this.getSaved() / (double)this.original;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"original=%d, optimized=%d, saved=%d (%.1f%%)",
+					this.original,
+					this.optimized,
+					this.getSaved(),
+					this.getRatio() * 100D);
+		}
+
+	}
+
+	public static final Compression DEFAULT = new Compression(
+			false,
+			PdfStream.DEFAULT_COMPRESSION,
+			false);
+
+	public static final Compression OPTIMIZED = new Compression(
+			true,
+			PdfStream.BEST_COMPRESSION,
+			true);
+
+	private final boolean fullCompression;
+
+	private final int level;
+
+	private final boolean recompress;
+
+	/*
+	 * fullCompression: object and cross-reference streams (PDF 1.5)
+	 * level: deflate level of the content streams, 0 to 9
+	 * recompress: deflate the unfiltered streams of the template
+	 */
+	public Compression(
+			boolean fullCompression,
+			int level,
+			boolean recompress) {
+		if (level != PdfStream.DEFAULT_COMPRESSION &&
+				(level < PdfStream.NO_COMPRESSION || level > PdfStream.BEST_COMPRESSION))
+			throw new IllegalArgumentException("level must be between 0 and 9");
+		this.fullCompression = fullCompression;
+		this.level = level;
+		this.recompress = recompress;
+	}
+
+	public boolean isFullCompression() {
+		return this.fullCompression;
+	}
+
+	public int getLevel() {
+		return this.level;
+	}
+
+	public boolean isRecompress() {
+		return this.recompress;
+	}
+
+	protected void recompress(PdfReader reader)
+			throws IOException {
+		int index;
+
+		for (index = 1; index < reader.getXrefSize(); index ++) {
+			PdfObject object;
+			PRStream stream;
+
+			object = reader.getPdfObject(index);
+			if (object == null || !object.isStream()) {
+				reader.releaseLastXrefPartial();
+				continue;
+			}
+			stream = (PRStream)object;
+			if (stream.get(PdfName.FILTER) != null ||
+					PdfName.METADATA.equals(stream.get(PdfName.TYPE))) {
+				reader.releaseLastXrefPartial();
+				continue;
+			}
+			/* kept in the reader until the stamper writes it */
+			stream.setData(PdfReader.getStreamBytesRaw(stream), true, this.level);
+		}
+	}
+
+	public void apply(PdfStamper stamper, PdfReader reader)
+			throws IOException {
+		if (this.fullCompression) stamper.setFullCompression();
+		stamper.getWriter().setCompressionLevel(this.level);
+		if (this.recompress) this.recompress(reader);
+	}
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfSmartCopy;
+import com.lowagie.text.pdf.SimpleBookmark;
+
+/*
+ * copies the pages of every source with PdfCopy, releasing each reader
+ * as soon as it is copied, while the next sources are opened and parsed
+ * on background threads. instances hold no per-call state and may be
+ * shared between threads.
+ */
+public class Concatenator {
+
+	public static final String PREFETCH_PROPERTY = Concatenator.class.getName() + ".prefetch";
+
+	public static final int DEFAULT_PREFETCH = 2;
+
+	public static abstract class Source {
+
+		public abstract PdfReader open()
+				throws IOException;
+
+		/* called once the pages of the reader are copied or discarded */
+		protected void close(PdfReader reader) {
+			reader.close();
+		}
+
+		public static Source of(final File file) {
+			return new Source() {
+
+				@Override
+				public PdfReader open()
+						throws IOException {
+					return PdfFiles.open(file);
+				}
+
+			};
+		}
+
+		public static Source of(final InputStream stream) {
+			return new Source() {
+
+				@Override
+				public PdfReader open()
+						throws IOException {
+					return new PdfReader(stream);
+				}
+
+			};
+		}
+
+		public static Source of(final byte[] data) {
+			return new Source() {
+
+				@Override
+				public PdfReader open()
+						throws IOException {
+					return PdfFiles.open(data);
+				}
+
+			};
+		}
+
+		public static Source of(final PreparedTemplate template) {
+			return new Source() {
+
+				@Override
+				public PdfReader open() {
+					return template.createReader();
+				}
+
+			};
+		}
+
+		/* the reader stays open, it is closed by the caller */
+		public static Source of(final PdfReader reader) {
+			return new Source() {
+
+				@Override
+				public PdfReader open() {
+					return reader;
+				}
+
+				@Override
+				protected void close(PdfReader reader) {
+					// do nothing
+				}
+
+			};
+		}
+
+		public static List<Source> of(List<File> files) {
+			List<Source> sources;
+
+			sources = new ArrayList<Source>(files.size());
+			for (File file : files) sources.add(Source.of(file));
+			return sources;
+		}
+
+	}
+
+	protected static class Prefetch {
+
+		private final Source source;
+
+		private final Future<PdfReader> reader;
+
+		protected Prefetch(Source source, Future<PdfReader> reader) {
+			this.source = source;
+			this.reader = reader;
+		}
+
+	}
+
+	private static final Concatenator DEFAULT = new Concatenator(
+			Integer.getInteger(
+					Concatenator.PREFETCH_PROPERTY,
+					Concatenator.DEFAULT_PREFETCH));
+
+	private final int prefetch;
+
+	private final ExecutorService executor;
+
+	public Concatenator(int prefetch) {
+		final AtomicInteger sequence;
+
+		if (prefetch <= 0)
+			throw new IllegalArgumentException("prefetch must be positive");
+		this.prefetch = prefetch;
+		sequence = new AtomicInteger();
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread;
+
+				thread = new Thread(
+						runnable,
+						Concatenator.class.getSimpleName() + '-' + sequence.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+	}
+
+	public Concatenator() {
+		this(Concatenator.DEFAULT_PREFETCH);
+	}
+
+	public int getPrefetch() {
+		return this.prefetch;
+	}
+
+	protected Prefetch submit(final Source source) {
+		return new Prefetch(
+				source,
+				this.executor.submit(new Callable<PdfReader>() {
+
+					@Override
+					public PdfReader call() throws Exception {
+						return source.open();
+					}
+
+				}));
+	}
+
+	protected PdfReader await(Future<PdfReader> future)
+			throws IOException {
+		boolean interrupted;
+
+		interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				}
+				catch (InterruptedException ignored) {
+					/* the reader must be collected to be closed, restore the flag later */
+					interrupted = true;
+				}
+				catch (ExecutionException cause) {
+					if (cause.getCause() instanceof IOException)
+						throw (IOException)cause.getCause();
+					if (cause.getCause() instanceof RuntimeException)
+						throw (RuntimeException)cause.getCause();
+					throw new IOException(cause.getCause());
+				}
+			}
+		}
+		finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	protected void discard(Prefetch prefetch) {
+		try {
+			prefetch.source.close(this.await(prefetch.reader));
+		}
+		catch (IOException | RuntimeException ignored) {
+			// do nothing
+		}
+	}
+
+	/*
+	 * deduplicate: streams with identical content (font programs, images,
+	 * template forms) are written once at the cost of hashing them.
+	 */
+	public void concatenate(
+			OutputStream destination,
+			Iterator<Source> sources,
+			boolean deduplicate)
+					throws IOException {
+		Deque<Prefetch> pending;
+		List<Object> outlines;
+		Document document;
+		PdfCopy writer;
+		int offset;
+
+		if (!sources.hasNext())
+			throw new IllegalArgumentException("sources is empty");
+		pending = new ArrayDeque<Prefetch>();
+		outlines = new ArrayList<Object>();
+		document = null;
+		writer = null;
+		offset = 0;
+		try {
+			while (true) {
+				Prefetch current;
+				PdfReader reader;
+
+				// the source being copied plus a bounded window opened ahead of it
+				while (pending.size() <= this.prefetch && sources.hasNext())
+					pending.addLast(this.submit(sources.next()));
+				if (pending.isEmpty()) break;
+				current = pending.removeFirst();
+				reader = this.await(current.reader);
+				try {
+					List<?> bookmarks;
+					int page;
+
+					reader.consolidateNamedDestinations();
+					bookmarks = SimpleBookmark.getBookmark(reader);
+					if (bookmarks != null) {
+						if (offset != 0)
+							SimpleBookmark.shiftPageNumbers(bookmarks, offset, null);
+						outlines.addAll(bookmarks);
+					}
+					offset += reader.getNumberOfPages();
+					if (document == null) {
+						document = new Document(reader.getPageSizeWithRotation(1));
+						writer = deduplicate ?
+								new PdfSmartCopy(document, destination) :
+								new PdfCopy(document, destination);
+						document.open();
+					}
+					for (page = 1; page <= reader.getNumberOfPages(); page ++)
+						writer.addPage(writer.getImportedPage(reader, page));
+					writer.freeReader(reader);
+				}
+				finally {
+					current.source.close(reader);
+				}
+			}
+			if (!outlines.isEmpty()) writer.setOutlines(outlines);
+			document.close();
+		}
+		catch (DocumentException cause) {
+			throw new IOException(cause);
+		}
+		finally {
+			for (Prefetch prefetch : pending) this.discard(prefetch);
+		}
+	}
+
+	public void concatenate(
+			OutputStream destination,
+			List<Source> sources,
+			boolean deduplicate)
+					throws IOException {
+		this.concatenate(destination, sources.iterator(), deduplicate);
+	}
+
+	public void concatenate(
+			OutputStream destination,
+			List<Source> sources)
+					throws IOException {
+		this.concatenate(destination, sources, false);
+	}
+
+	public void concatenate(
+			File destination,
+			List<Source> sources,
+			boolean deduplicate)
+					throws IOException {
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			this.concatenate(output, sources, deduplicate);
+		}
+	}
+
+	public void concatenate(
+			File destination,
+			List<Source> sources)
+					throws IOException {
+		this.concatenate(destination, sources, false);
+	}
+
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	public static Concatenator getDefault() {
+		return Concatenator.DEFAULT;
+	}
+
+}
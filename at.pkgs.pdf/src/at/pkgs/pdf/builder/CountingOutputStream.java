@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.io.OutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+
+public class CountingOutputStream extends FilterOutputStream {
+
+	private long count;
+
+	public CountingOutputStream(OutputStream output) {
+		super(output);
+		this.count = 0L;
+	}
+
+	/* a sink that only counts */
+	public CountingOutputStream() {
+		this(new OutputStream() {
+
+			@Override
+			public void write(int value) {
+				// do nothing
+			}
+
+			@Override
+			public void write(byte[] bytes, int offset, int length) {
+				// do nothing
+			}
+
+		});
+	}
+
+	public long getCount() {
+		return this.count;
+	}
+
+	@Override
+	public void write(int value)
+			throws IOException {
+		this.out.write(value);
+		this.count ++;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length)
+			throws IOException {
+		this.out.write(bytes, offset, length);
+		this.count += length;
+	}
+
+}
@@ -17,12 +17,10 @@
 
 package at.pkgs.pdf.builder;
 
-import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Collections;
 import java.io.File;
 import java.io.InputStream;
 import java.io.BufferedInputStream;
@@ -31,53 +29,309 @@ import java.io.OutputStream;
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.awt.Color;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.Font;
-import com.lowagie.text.Phrase;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfReader;
 import com.lowagie.text.pdf.PdfStamper;
 import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfTemplate;
 import com.lowagie.text.pdf.BaseFont;
-import com.lowagie.text.pdf.ColumnText;
 
 public class DocumentBuilder {
 
+	public static final int DEFAULT_STREAM_BUFFER = 1024;
+
+	private static volatile RenderListener defaultListener;
+
+	/*
+	 * renders values as they are parsed: values of the same page are
+	 * buffered up to the limit so that the render plan can still coalesce
+	 * them, and the buffer is flushed whenever the page changes.
+	 */
+	protected class Streamer implements DocumentModelReader.Handler {
+
+		private final int limit;
+
+		private final List<DocumentModel.Value> buffer;
+
+		private boolean rendered;
+
+		public Streamer(int limit) {
+			if (limit <= 0)
+				throw new IllegalArgumentException("limit must be positive");
+			this.limit = limit;
+			this.buffer = new ArrayList<DocumentModel.Value>();
+			this.rendered = false;
+		}
+
+		@Override
+		public void version(int version) {
+			// do nothing
+		}
+
+		@Override
+		public void font(DocumentModel.Font font)
+				throws IOException {
+			if (this.rendered || !this.buffer.isEmpty())
+				throw new IOException("Fonts must precede Values in streaming mode");
+			try {
+				DocumentBuilder.this.font(font);
+			}
+			catch (DocumentException cause) {
+				throw new IOException(cause);
+			}
+		}
+
+		@Override
+		public void layout(DocumentModel.Layout layout)
+				throws IOException {
+			if (this.rendered || !this.buffer.isEmpty())
+				throw new IOException("Layouts must precede Values in streaming mode");
+			DocumentBuilder.this.layout(layout);
+		}
+
+		@Override
+		public void value(DocumentModel.Value value)
+				throws IOException {
+			if (!this.buffer.isEmpty()) {
+				if (this.buffer.size() >= this.limit ||
+						this.buffer.get(0).getPage() != value.getPage())
+					this.flush();
+			}
+			this.buffer.add(value);
+		}
+
+		public void flush()
+				throws IOException {
+			if (this.buffer.isEmpty()) return;
+			try {
+				DocumentBuilder.this.render(
+						DocumentBuilder.this.compile(this.buffer));
+			}
+			catch (DocumentException cause) {
+				throw new IOException(cause);
+			}
+			this.buffer.clear();
+			this.rendered = true;
+		}
+
+	}
+
+	private final PreparedTemplate template;
+
 	private final PdfReader reader;
 
+	private final CountingOutputStream output;
+
 	private final PdfStamper stamper;
 
+	private final FontRegistry registry;
+
 	private final Map<String, BaseFont> fonts;
 
+	private final Map<String, DocumentModel.Layout> layouts;
+
+	private final RenderPlan.Context context;
+
+	private final Map<Object, PdfTemplate> forms;
+
 	private int page;
 
 	private Rectangle size;
 
 	private PdfContentByte content;
 
-	public DocumentBuilder(
-			InputStream template,
-			OutputStream destination)
+	private Compression compression;
+
+	private RenderListener listener;
+
+	private Object attachment;
+
+	private boolean closed;
+
+	protected DocumentBuilder(
+			PreparedTemplate template,
+			PdfReader reader,
+			OutputStream destination,
+			FontRegistry registry)
 					throws IOException, DocumentException {
-		this.reader = new PdfReader(template);
-		this.stamper = new PdfStamper(this.reader, destination);
+		long started;
+
+		this.attachment = null;
+		this.listener = DocumentBuilder.defaultListener;
+		started = this.start(RenderListener.Phase.TEMPLATE);
+		try {
+			this.template = template;
+			this.reader = (reader != null) ? reader : template.createReader();
+			this.output = new CountingOutputStream(destination);
+			try {
+				this.stamper = new PdfStamper(this.reader, this.output);
+			}
+			catch (IOException | DocumentException | RuntimeException cause) {
+				this.reader.close();
+				throw cause;
+			}
+		}
+		finally {
+			this.end(RenderListener.Phase.TEMPLATE, started);
+		}
+		this.registry = registry;
 		this.fonts = new HashMap<String, BaseFont>();
+		this.layouts = new HashMap<String, DocumentModel.Layout>();
+		this.context = new RenderPlan.Context() {
+
+			@Override
+			protected BaseFont font(String name) {
+				return DocumentBuilder.this.fonts.get(name);
+			}
+
+			@Override
+			protected DocumentModel.Layout layout(String name) {
+				return DocumentBuilder.this.layouts.get(name);
+			}
+
+			@Override
+			protected float height(int page) {
+				return DocumentBuilder.this.getCropBox(page).getHeight();
+			}
+
+			@Override
+			protected RenderPlan.Operation compile(
+					RenderPlan.Context context,
+					DocumentModel.Value value)
+							throws IOException, DocumentException {
+				RenderListener listener;
+				RenderPlan.Operation operation;
+				long started;
+
+				listener = DocumentBuilder.this.listener;
+				if (listener == null) return super.compile(context, value);
+				started = System.nanoTime();
+				operation = super.compile(context, value);
+				listener.value(DocumentBuilder.this, value, System.nanoTime() - started);
+				return operation;
+			}
+
+		};
+		this.forms = new HashMap<Object, PdfTemplate>();
 		this.page = 0;
 		this.content = null;
+		this.compression = null;
+		this.closed = false;
+	}
+
+	public DocumentBuilder(
+			PreparedTemplate template,
+			OutputStream destination,
+			FontRegistry registry)
+					throws IOException, DocumentException {
+		this(template, null, destination, registry);
+	}
+
+	public DocumentBuilder(
+			PreparedTemplate template,
+			OutputStream destination)
+					throws IOException, DocumentException {
+		this(template, destination, FontRegistry.getDefault());
+	}
+
+	public DocumentBuilder(
+			InputStream template,
+			OutputStream destination,
+			FontRegistry registry)
+					throws IOException, DocumentException {
+		this(null, new PdfReader(template), destination, registry);
+	}
+
+	public DocumentBuilder(
+			File template,
+			OutputStream destination,
+			FontRegistry registry)
+					throws IOException, DocumentException {
+		this(null, PdfFiles.open(template), destination, registry);
+	}
+
+	public DocumentBuilder(
+			File template,
+			OutputStream destination)
+					throws IOException, DocumentException {
+		this(template, destination, FontRegistry.getDefault());
+	}
+
+	public DocumentBuilder(
+			InputStream template,
+			OutputStream destination)
+					throws IOException, DocumentException {
+		this(template, destination, FontRegistry.getDefault());
+	}
+
+	public FontRegistry getFontRegistry() {
+		return this.registry;
+	}
+
+	public static RenderListener getDefaultListener() {
+		return DocumentBuilder.defaultListener;
+	}
+
+	/* applies to builders created afterwards */
+	public static void setDefaultListener(RenderListener listener) {
+		DocumentBuilder.defaultListener = listener;
+	}
+
+	public RenderListener getListener() {
+		return this.listener;
+	}
+
+	public void setListener(RenderListener listener) {
+		this.listener = listener;
+	}
+
+	/*
+	 * per document state of the listener, typically attached when the
+	 * TEMPLATE phase starts, so events need no lookup.
+	 */
+	public Object getAttachment() {
+		return this.attachment;
+	}
+
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+
+	protected long start(RenderListener.Phase phase) {
+		if (this.listener == null) return 0L;
+		this.listener.start(this, phase);
+		return System.nanoTime();
+	}
+
+	protected void end(RenderListener.Phase phase, long started) {
+		if (this.listener == null) return;
+		this.listener.end(this, phase, System.nanoTime() - started);
 	}
 
 	public void font(DocumentModel.Font model)
 			throws IOException, DocumentException {
-		this.fonts.put(
-				model.getName(),
-				BaseFont.createFont(
-						model.getFile(),
-						model.getEncoding(),
-						model.getEmbeded()));
+		long started;
+
+		started = this.start(RenderListener.Phase.FONT);
+		try {
+			this.fonts.put(
+					model.getName(),
+					this.registry.get(model));
+		}
+		finally {
+			this.end(RenderListener.Phase.FONT, started);
+		}
 	}
 
-	public Color getColor(String color) {
+	public void layout(DocumentModel.Layout model) {
+		this.layouts.put(model.getName(), model);
+	}
+
+	public static Color parseColor(String color) {
 		int value;
 
 		if (color == null) return null;
@@ -88,10 +342,10 @@ public class DocumentBuilder {
 				(value & 0x0000FF));
 	}
 
-	public Font buildFont(String name, float size, String color) {
+	public static Font createFont(BaseFont base, float size, String color) {
 		Font font;
 
-		font = new Font(this.fonts.get(name), size);
+		font = new Font(base, size);
 		if (color != null && color.length() == 3) {
 			int value;
 
@@ -102,15 +356,30 @@ public class DocumentBuilder {
 					(value & 0x00F) << 4 | (value & 0x00F));
 		}
 		if (color != null && !color.isEmpty())
-			font.setColor(this.getColor(color));
+			font.setColor(DocumentBuilder.parseColor(color));
 		return font;
 	}
 
+	public Color getColor(String color) {
+		return DocumentBuilder.parseColor(color);
+	}
+
+	public Font buildFont(String name, float size, String color) {
+		return DocumentBuilder.createFont(this.fonts.get(name), size, color);
+	}
+
+	protected Rectangle getCropBox(int page) {
+		return (this.template != null) ?
+				this.template.cropBox(page) :
+				this.reader.getCropBox(page);
+	}
+
 	protected void setPage(int page) {
 		if (this.page == page) return;
-		this.size = this.reader.getCropBox(page);
+		this.size = this.getCropBox(page);
 		this.content = this.stamper.getOverContent(page);
 		this.page = page;
+		if (this.listener != null) this.listener.page(this, page);
 	}
 
 	protected Rectangle getSize(int page) {
@@ -127,120 +396,157 @@ public class DocumentBuilder {
 		return this.content;
 	}
 
-	public void text(DocumentModel.Text model)
-			throws IOException, DocumentException {
-		float height;
-		Font font;
-		ColumnText column;
-
-		height = this.getHeight(model.getPage());
-		font = this.buildFont(
-				model.getFont(),
-				model.getSize(),
-				model.getColor());
-		column = new ColumnText(this.getContent(model.getPage()));
-		column.setSimpleColumn(
-				model.getLeft(),
-				height - model.getTop() - model.getHeight(),
-				model.getLeft() + model.getWidth(),
-				height - model.getTop());
-		column.setLeading(model.getLeading());
-		if (model.getHorizontal() != null) {
-			switch (model.getHorizontal()) {
-			case LEFT :
-				column.setAlignment(Phrase.ALIGN_LEFT);
-				break;
-			case CENTER :
-				column.setAlignment(Phrase.ALIGN_CENTER);
-				break;
-			case RIGHT :
-				column.setAlignment(Phrase.ALIGN_RIGHT);
-				break;
-			}
+	protected void draw(
+			PdfContentByte content,
+			RenderPlan.Operation operation)
+					throws DocumentException {
+		long started;
+
+		if (this.listener == null) {
+			operation.draw(content, this.forms);
+			return;
 		}
-		column.addText(new Phrase(model.getValue(), font));
-		column.go();
+		started = System.nanoTime();
+		operation.draw(content, this.forms);
+		this.listener.operation(this, operation, System.nanoTime() - started);
 	}
 
-	protected void stroke(PdfContentByte content, DocumentModel.Stroke model) {
-		content.saveState();
-		content.setLineWidth(model.getWidth());
-		content.setColorStroke(this.getColor(model.getColor()));
-		content.stroke();
-		content.restoreState();
+	protected void draw(RenderPlan.Operation operation)
+			throws DocumentException {
+		if (operation == null) return;
+		this.draw(this.getContent(operation.getPage()), operation);
 	}
 
-	protected void fill(PdfContentByte content, DocumentModel.Fill model) {
-		content.saveState();
-		content.setColorFill(this.getColor(model.getColor()));
-		content.fill();
-		content.restoreState();
+	public void text(DocumentModel.Text model)
+			throws IOException, DocumentException {
+		this.value(model);
 	}
 
-	protected void verb(PdfContentByte content, DocumentModel.Verb verb) {
-		if (verb instanceof DocumentModel.Stroke) {
-			this.stroke(content, (DocumentModel.Stroke)verb);
-			return;
+	public void rectangle(DocumentModel.Rectangle model)
+			throws DocumentException {
+		try {
+			this.value(model);
 		}
-		if (verb instanceof DocumentModel.Fill) {
-			this.fill(content, (DocumentModel.Fill)verb);
-			return;
+		catch (IOException cause) {
+			/* a rectangle loads no font, compiling it reads nothing */
+			throw new DocumentException(cause);
 		}
-		throw new UnsupportedOperationException();
 	}
 
-	public void rectangle(DocumentModel.Rectangle model) {
-		PdfContentByte content;
-
-		if (model.getVerb() == null) return;
-		content = this.getContent(model.getPage());
-		content.rectangle(
-				model.getLeft(),
-				this.getHeight(model.getPage()) - model.getTop() - model.getHeight(),
-				model.getWidth(),
-				model.getHeight());
-		this.verb(content, model.getVerb());
+	public void value(DocumentModel.Value value)
+			throws IOException, DocumentException {
+		this.draw(this.context.compile(value));
 	}
 
-	public void value(DocumentModel.Value value)
+	public RenderPlan compile(DocumentModel model)
 			throws IOException, DocumentException {
-		if (value instanceof DocumentModel.Text) {
-			this.text((DocumentModel.Text)value);
-			return;
+		if (model.getFonts() != null) {
+			for (DocumentModel.Font font : model.getFonts()) this.font(font);
 		}
-		if (value instanceof DocumentModel.Rectangle) {
-			this.rectangle((DocumentModel.Rectangle)value);
-			return;
+		if (model.getLayouts() != null) {
+			for (DocumentModel.Layout layout : model.getLayouts()) this.layout(layout);
 		}
-		throw new UnsupportedOperationException();
+		return this.compile(model.getValues());
 	}
 
-	public void merge(DocumentModel model)
+	protected RenderPlan compile(List<DocumentModel.Value> values)
 			throws IOException, DocumentException {
-		if (model.getFonts() != null) {
-			for (DocumentModel.Font font : model.getFonts()) this.font(font);
+		long started;
+
+		started = this.start(RenderListener.Phase.COMPILE);
+		try {
+			return this.context.compile(values);
+		}
+		finally {
+			this.end(RenderListener.Phase.COMPILE, started);
 		}
-		if (model.getValues() != null) {
-			List<DocumentModel.Value> values;
+	}
 
-			values = new ArrayList<DocumentModel.Value>(model.getValues());
-			Collections.sort(values, new Comparator<DocumentModel.Value>() {
+	public void render(RenderPlan plan)
+			throws DocumentException {
+		long started;
 
-				@Override
-				public int compare(
-						DocumentModel.Value left,
-						DocumentModel.Value right) {
-					return left.getPage() - right.getPage();
-				}
+		started = this.start(RenderListener.Phase.RENDER);
+		try {
+			for (RenderPlan.Page page : plan.getPages()) {
+				PdfContentByte content;
 
-			});
-			for (DocumentModel.Value value : values) this.value(value);
+				content = this.getContent(page.getNumber());
+				for (RenderPlan.Operation operation : page.getOperations())
+					this.draw(content, operation);
+			}
 		}
+		finally {
+			this.end(RenderListener.Phase.RENDER, started);
+		}
+	}
+
+	public void merge(DocumentModel model)
+			throws IOException, DocumentException {
+		this.render(this.compile(model));
+	}
+
+	public void stream(InputStream model, int limit)
+			throws IOException {
+		Streamer streamer;
+
+		streamer = new Streamer(limit);
+		DocumentModelReader.read(model, streamer);
+		streamer.flush();
+	}
+
+	public void stream(InputStream model)
+			throws IOException {
+		this.stream(model, DocumentBuilder.DEFAULT_STREAM_BUFFER);
+	}
+
+	public Compression getCompression() {
+		return this.compression;
+	}
+
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
+	public long getLength() {
+		return this.output.getCount();
 	}
 
 	public void close()
 			throws IOException, DocumentException {
-		this.stamper.close();
+		long started;
+
+		started = this.start(RenderListener.Phase.CLOSE);
+		try {
+			if (this.compression != null)
+				this.compression.apply(this.stamper, this.reader);
+			this.stamper.close();
+			this.closed = true;
+		}
+		finally {
+			this.end(RenderListener.Phase.CLOSE, started);
+		}
+		this.reader.close();
+		if (this.listener != null)
+			this.listener.output(this, this.output.getCount());
+	}
+
+	/*
+	 * releases the stamper and the template reader unless close() has
+	 * completed; the output of a released builder is incomplete.
+	 */
+	public void release() {
+		if (this.closed) return;
+		this.closed = true;
+		try {
+			this.stamper.close();
+		}
+		catch (IOException | DocumentException | RuntimeException ignored) {
+			// do nothing
+		}
+		finally {
+			this.reader.close();
+		}
 	}
 
 	public static void merge(
@@ -251,23 +557,219 @@ public class DocumentBuilder {
 		DocumentBuilder builder;
 
 		builder = new DocumentBuilder(template, destination);
-		for (DocumentModel model : models) builder.merge(model);
-		builder.close();
+		try {
+			for (DocumentModel model : models) builder.merge(model);
+			builder.close();
+		}
+		finally {
+			builder.release();
+		}
+	}
+
+	public static void merge(
+			PreparedTemplate template,
+			OutputStream destination,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		DocumentBuilder builder;
+
+		builder = new DocumentBuilder(template, destination);
+		try {
+			for (DocumentModel model : models) builder.merge(model);
+			builder.close();
+		}
+		finally {
+			builder.release();
+		}
+	}
+
+	public static void merge(
+			PreparedTemplate template,
+			File destination,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			DocumentBuilder.merge(template, output, models);
+		}
 	}
 
 	public static void merge(
 			File template,
+			OutputStream destination,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		DocumentBuilder builder;
+
+		builder = new DocumentBuilder(template, destination);
+		try {
+			for (DocumentModel model : models) builder.merge(model);
+			builder.close();
+		}
+		finally {
+			builder.release();
+		}
+	}
+
+	public static void merge(
+			File template,
+			File destination,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			DocumentBuilder.merge(template, output, models);
+		}
+	}
+
+	public static long merge(
+			PreparedTemplate template,
+			OutputStream destination,
+			Compression compression,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		DocumentBuilder builder;
+
+		builder = new DocumentBuilder(template, destination);
+		try {
+			builder.setCompression(compression);
+			for (DocumentModel model : models) builder.merge(model);
+			builder.close();
+		}
+		finally {
+			builder.release();
+		}
+		return builder.getLength();
+	}
+
+	public static long merge(
+			PreparedTemplate template,
 			File destination,
+			Compression compression,
 			DocumentModel... models)
 					throws IOException, DocumentException {
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			return DocumentBuilder.merge(template, output, compression, models);
+		}
+	}
+
+	/*
+	 * renders twice, the baseline with default settings into a counting
+	 * sink; merge with a compression writes the same output in one pass.
+	 */
+	public static Compression.Report optimize(
+			PreparedTemplate template,
+			OutputStream destination,
+			Compression compression,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		long original;
+		long optimized;
+
+		original = DocumentBuilder.merge(template, new CountingOutputStream(), Compression.DEFAULT, models);
+		optimized = DocumentBuilder.merge(template, destination, compression, models);
+		return new Compression.Report(original, optimized);
+	}
+
+	public static Compression.Report optimize(
+			PreparedTemplate template,
+			File destination,
+			Compression compression,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			return DocumentBuilder.optimize(template, output, compression, models);
+		}
+	}
+
+	public static BufferPool.Buffer render(
+			PreparedTemplate template,
+			BufferPool pool,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		BufferPool.Buffer buffer;
+
+		buffer = pool.acquire(template);
+		try {
+			DocumentBuilder.merge(template, buffer, models);
+		}
+		catch (IOException | DocumentException | RuntimeException cause) {
+			buffer.release();
+			throw cause;
+		}
+		return buffer;
+	}
+
+	public static BufferPool.Buffer render(
+			PreparedTemplate template,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		return DocumentBuilder.render(template, BufferPool.getDefault(), models);
+	}
+
+	public static void render(
+			PreparedTemplate template,
+			WritableByteChannel destination,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		BufferPool.Buffer buffer;
+
+		buffer = DocumentBuilder.render(template, models);
+		try {
+			buffer.writeTo(destination);
+		}
+		finally {
+			buffer.release();
+		}
+	}
+
+	public static byte[] toByteArray(
+			PreparedTemplate template,
+			DocumentModel... models)
+					throws IOException, DocumentException {
+		BufferPool.Buffer buffer;
+
+		buffer = DocumentBuilder.render(template, models);
+		try {
+			return buffer.toByteArray();
+		}
+		finally {
+			buffer.release();
+		}
+	}
+
+	public static void stream(
+			File template,
+			File destination,
+			File model)
+					throws IOException, DocumentException {
 		try (
 				InputStream input = new BufferedInputStream(
 						new FileInputStream(
-								template));
+								model));
 				OutputStream output = new BufferedOutputStream(
 						new FileOutputStream(
 								destination))) {
-			DocumentBuilder.merge(input, output, models);
+			DocumentBuilder builder;
+
+			builder = new DocumentBuilder(template, output);
+			try {
+				builder.stream(input);
+				builder.close();
+			}
+			finally {
+				builder.release();
+			}
 		}
 	}
 
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * FORMAT:
+ * header: magic (0x89 'P' 'D' 'M'), format version, flags (bit 0: gzip)
+ * body: model version, fonts, layouts, values (gzip compressed if flagged),
+ * format version 1 has no layouts
+ * counts are unsigned varints holding count + 1 (0 for a null list),
+ * floats are raw IEEE 754, dictionary strings are varints:
+ * 0 for null, 1 followed by a new entry, n for the (n - 2)th entry.
+ */
+public class DocumentModelEncoder {
+
+	public static final byte[] MAGIC = { (byte)0x89, 'P', 'D', 'M' };
+
+	public static final int FORMAT_VERSION = 2;
+
+	public static final int FLAG_GZIP = 0x01;
+
+	static final int TEXT = 1;
+
+	static final int RECTANGLE = 2;
+
+	static final int BARCODE = 3;
+
+	static final int PLACE = 4;
+
+	static final int STROKE = 1;
+
+	static final int FILL = 2;
+
+	private final OutputStream output;
+
+	private final boolean compress;
+
+	private final Map<String, Integer> dictionary;
+
+	private DataOutputStream data;
+
+	public DocumentModelEncoder(OutputStream output, boolean compress) {
+		this.output = output;
+		this.compress = compress;
+		this.dictionary = new HashMap<String, Integer>();
+	}
+
+	public DocumentModelEncoder(OutputStream output) {
+		this(output, false);
+	}
+
+	protected void writeVarint(int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			this.data.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.data.writeByte(value);
+	}
+
+	protected void writeString(String value)
+			throws IOException {
+		byte[] bytes;
+
+		if (value == null) {
+			this.writeVarint(0);
+			return;
+		}
+		bytes = value.getBytes(StandardCharsets.UTF_8);
+		this.writeVarint(bytes.length + 1);
+		this.data.write(bytes);
+	}
+
+	protected void writeEntry(String value)
+			throws IOException {
+		Integer index;
+
+		if (value == null) {
+			this.writeVarint(0);
+			return;
+		}
+		index = this.dictionary.get(value);
+		if (index != null) {
+			this.writeVarint(index + 2);
+			return;
+		}
+		this.dictionary.put(value, this.dictionary.size());
+		this.writeVarint(1);
+		this.writeString(value);
+	}
+
+	protected void writeHorizontal(DocumentModel.Horizontal value)
+			throws IOException {
+		this.data.writeByte(value == null ? 0 : value.ordinal() + 1);
+	}
+
+	protected void write(DocumentModel.Font font)
+			throws IOException {
+		this.writeEntry(font.getName());
+		this.writeEntry(font.getFile());
+		this.writeEntry(font.getEncoding());
+		this.data.writeBoolean(font.getEmbeded());
+	}
+
+	protected void write(DocumentModel.Text text)
+			throws IOException {
+		this.data.writeByte(DocumentModelEncoder.TEXT);
+		this.writeVarint(text.getPage());
+		this.data.writeFloat(text.getLeft());
+		this.data.writeFloat(text.getTop());
+		this.data.writeFloat(text.getWidth());
+		this.data.writeFloat(text.getHeight());
+		this.data.writeFloat(text.getLeading());
+		this.writeHorizontal(text.getHorizontal());
+		this.writeEntry(text.getFont());
+		this.data.writeFloat(text.getSize());
+		this.writeEntry(text.getColor());
+		this.writeString(text.getValue());
+	}
+
+	protected void write(DocumentModel.Rectangle rectangle)
+			throws IOException {
+		DocumentModel.Verb verb;
+
+		this.data.writeByte(DocumentModelEncoder.RECTANGLE);
+		this.writeVarint(rectangle.getPage());
+		this.data.writeFloat(rectangle.getLeft());
+		this.data.writeFloat(rectangle.getTop());
+		this.data.writeFloat(rectangle.getWidth());
+		this.data.writeFloat(rectangle.getHeight());
+		verb = rectangle.getVerb();
+		if (verb == null) {
+			this.data.writeByte(0);
+			return;
+		}
+		if (verb instanceof DocumentModel.Stroke) {
+			this.data.writeByte(DocumentModelEncoder.STROKE);
+			this.data.writeFloat(((DocumentModel.Stroke)verb).getWidth());
+			this.writeEntry(((DocumentModel.Stroke)verb).getColor());
+			return;
+		}
+		if (verb instanceof DocumentModel.Fill) {
+			this.data.writeByte(DocumentModelEncoder.FILL);
+			this.writeEntry(((DocumentModel.Fill)verb).getColor());
+			return;
+		}
+		throw new UnsupportedOperationException();
+	}
+
+	protected void write(DocumentModel.Barcode barcode)
+			throws IOException {
+		this.data.writeByte(DocumentModelEncoder.BARCODE);
+		this.writeVarint(barcode.getPage());
+		this.data.writeFloat(barcode.getLeft());
+		this.data.writeFloat(barcode.getTop());
+		this.data.writeFloat(barcode.getWidth());
+		this.data.writeFloat(barcode.getHeight());
+		this.writeHorizontal(barcode.getHorizontal());
+		this.data.writeFloat(barcode.getSize());
+		this.writeEntry(barcode.getColor());
+		this.writeEntry(barcode.getSymbology());
+		this.writeString(barcode.getPattern());
+		this.writeString(barcode.getValue());
+	}
+
+	protected void write(DocumentModel.Place place)
+			throws IOException {
+		this.data.writeByte(DocumentModelEncoder.PLACE);
+		this.writeVarint(place.getPage());
+		this.data.writeFloat(place.getLeft());
+		this.data.writeFloat(place.getTop());
+		this.writeEntry(place.getLayout());
+	}
+
+	protected void write(DocumentModel.Value value)
+			throws IOException {
+		if (value instanceof DocumentModel.Text) {
+			this.write((DocumentModel.Text)value);
+			return;
+		}
+		if (value instanceof DocumentModel.Rectangle) {
+			this.write((DocumentModel.Rectangle)value);
+			return;
+		}
+		if (value instanceof DocumentModel.Barcode) {
+			this.write((DocumentModel.Barcode)value);
+			return;
+		}
+		if (value instanceof DocumentModel.Place) {
+			this.write((DocumentModel.Place)value);
+			return;
+		}
+		throw new UnsupportedOperationException();
+	}
+
+	protected void write(List<DocumentModel.Value> values)
+			throws IOException {
+		if (values == null) {
+			this.writeVarint(0);
+			return;
+		}
+		this.writeVarint(values.size() + 1);
+		for (DocumentModel.Value value : values) this.write(value);
+	}
+
+	protected void write(DocumentModel.Layout layout)
+			throws IOException {
+		this.writeEntry(layout.getName());
+		this.data.writeFloat(layout.getWidth());
+		this.data.writeFloat(layout.getHeight());
+		this.write(layout.getValues());
+	}
+
+	public void write(DocumentModel model)
+			throws IOException {
+		GZIPOutputStream gzip;
+
+		this.output.write(DocumentModelEncoder.MAGIC);
+		this.output.write(DocumentModelEncoder.FORMAT_VERSION);
+		this.output.write(this.compress ? DocumentModelEncoder.FLAG_GZIP : 0);
+		gzip = this.compress ? new GZIPOutputStream(this.output, 8192) : null;
+		this.data = new DataOutputStream(
+				new BufferedOutputStream(
+						gzip != null ? gzip : this.output));
+		this.dictionary.clear();
+		this.data.writeInt(model.getVersion());
+		if (model.getFonts() == null) {
+			this.writeVarint(0);
+		}
+		else {
+			this.writeVarint(model.getFonts().size() + 1);
+			for (DocumentModel.Font font : model.getFonts()) this.write(font);
+		}
+		if (model.getLayouts() == null) {
+			this.writeVarint(0);
+		}
+		else {
+			this.writeVarint(model.getLayouts().size() + 1);
+			for (DocumentModel.Layout layout : model.getLayouts()) this.write(layout);
+		}
+		this.write(model.getValues());
+		this.data.flush();
+		if (gzip != null) gzip.finish();
+		this.output.flush();
+	}
+
+	public static void write(DocumentModel model, OutputStream output, boolean compress)
+			throws IOException {
+		new DocumentModelEncoder(output, compress).write(model);
+	}
+
+	public static void write(DocumentModel model, File output, boolean compress)
+			throws IOException {
+		try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(output))) {
+			DocumentModelEncoder.write(model, stream, compress);
+		}
+	}
+
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.io.File;
+import java.io.Writer;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * writes the same document JAXB.marshal(model, ...) writes: formatted
+ * with four space indent, attributes in property order and null
+ * attributes omitted.
+ */
+public class DocumentModelWriter {
+
+	private static final String INDENT = "    ";
+
+	private final Writer writer;
+
+	private int depth;
+
+	public DocumentModelWriter(Writer writer) {
+		this.writer = writer;
+		this.depth = 2;
+	}
+
+	public DocumentModelWriter(OutputStream output) {
+		this(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+	}
+
+	protected void escape(String value, boolean attribute)
+			throws IOException {
+		int index;
+		int start;
+
+		start = 0;
+		for (index = 0; index < value.length(); index ++) {
+			String replacement;
+
+			switch (value.charAt(index)) {
+			case '&' :
+				replacement = "&amp;";
+				break;
+			case '<' :
+				replacement = "&lt;";
+				break;
+			case '>' :
+				replacement = "&gt;";
+				break;
+			case '"' :
+				replacement = attribute ? "&quot;" : null;
+				break;
+			case '\t' :
+				replacement = attribute ? "&#x9;" : null;
+				break;
+			case '\n' :
+				replacement = attribute ? "&#xA;" : null;
+				break;
+			case '\r' :
+				replacement = "&#xD;";
+				break;
+			default :
+				replacement = null;
+				break;
+			}
+			if (replacement == null) continue;
+			this.writer.write(value, start, index - start);
+			this.writer.write(replacement);
+			start = index + 1;
+		}
+		this.writer.write(value, start, value.length() - start);
+	}
+
+	protected void indent(int depth)
+			throws IOException {
+		int index;
+
+		for (index = 0; index < depth; index ++)
+			this.writer.write(DocumentModelWriter.INDENT);
+	}
+
+	protected void attribute(String name, String value)
+			throws IOException {
+		if (value == null) return;
+		this.writer.write(' ');
+		this.writer.write(name);
+		this.writer.write("=\"");
+		this.escape(value, true);
+		this.writer.write('"');
+	}
+
+	protected void attribute(String name, int value)
+			throws IOException {
+		this.attribute(name, Integer.toString(value, 10));
+	}
+
+	protected void attribute(String name, float value)
+			throws IOException {
+		if (Float.isNaN(value))
+			this.attribute(name, "NaN");
+		else if (value == Float.POSITIVE_INFINITY)
+			this.attribute(name, "INF");
+		else if (value == Float.NEGATIVE_INFINITY)
+			this.attribute(name, "-INF");
+		else
+			this.attribute(name, Float.toString(value));
+	}
+
+	protected void attribute(String name, boolean value)
+			throws IOException {
+		this.attribute(name, value ? "true" : "false");
+	}
+
+	protected void attribute(String name, DocumentModel.Horizontal value)
+			throws IOException {
+		if (value == null) return;
+		switch (value) {
+		case LEFT :
+			this.attribute(name, "left");
+			break;
+		case CENTER :
+			this.attribute(name, "center");
+			break;
+		case RIGHT :
+			this.attribute(name, "right");
+			break;
+		}
+	}
+
+	protected void end(String name, String value)
+			throws IOException {
+		if (value == null) {
+			this.writer.write("/>\n");
+			return;
+		}
+		this.writer.write('>');
+		this.escape(value, false);
+		this.writer.write("</");
+		this.writer.write(name);
+		this.writer.write(">\n");
+	}
+
+	protected void write(DocumentModel.Font font)
+			throws IOException {
+		this.indent(2);
+		this.writer.write("<Font");
+		this.attribute("name", font.getName());
+		this.attribute("encoding", font.getEncoding());
+		this.attribute("embeded", font.getEmbeded());
+		this.end("Font", font.getFile());
+	}
+
+	protected void write(DocumentModel.Text text)
+			throws IOException {
+		this.indent(this.depth);
+		this.writer.write("<Text");
+		this.attribute("page", text.getPage());
+		this.attribute("left", text.getLeft());
+		this.attribute("top", text.getTop());
+		this.attribute("width", text.getWidth());
+		this.attribute("height", text.getHeight());
+		this.attribute("leading", text.getLeading());
+		this.attribute("horizontal", text.getHorizontal());
+		this.attribute("font", text.getFont());
+		this.attribute("size", text.getSize());
+		this.attribute("color", text.getColor());
+		this.end("Text", text.getValue());
+	}
+
+	protected void write(DocumentModel.Verb verb)
+			throws IOException {
+		this.indent(this.depth + 1);
+		if (verb instanceof DocumentModel.Stroke) {
+			DocumentModel.Stroke stroke;
+
+			stroke = (DocumentModel.Stroke)verb;
+			this.writer.write("<Stroke");
+			this.attribute("width", stroke.getWidth());
+			this.attribute("color", stroke.getColor());
+			this.writer.write("/>\n");
+			return;
+		}
+		if (verb instanceof DocumentModel.Fill) {
+			this.writer.write("<Fill");
+			this.attribute("color", ((DocumentModel.Fill)verb).getColor());
+			this.writer.write("/>\n");
+			return;
+		}
+		throw new UnsupportedOperationException();
+	}
+
+	protected void write(DocumentModel.Rectangle rectangle)
+			throws IOException {
+		this.indent(this.depth);
+		this.writer.write("<Rectangle");
+		this.attribute("page", rectangle.getPage());
+		this.attribute("left", rectangle.getLeft());
+		this.attribute("top", rectangle.getTop());
+		this.attribute("width", rectangle.getWidth());
+		this.attribute("height", rectangle.getHeight());
+		if (rectangle.getVerb() == null) {
+			this.writer.write("/>\n");
+			return;
+		}
+		this.writer.write(">\n");
+		this.write(rectangle.getVerb());
+		this.indent(this.depth);
+		this.writer.write("</Rectangle>\n");
+	}
+
+	protected void write(DocumentModel.Barcode barcode)
+			throws IOException {
+		this.indent(this.depth);
+		this.writer.write("<Barcode");
+		this.attribute("page", barcode.getPage());
+		this.attribute("left", barcode.getLeft());
+		this.attribute("top", barcode.getTop());
+		this.attribute("width", barcode.getWidth());
+		this.attribute("height", barcode.getHeight());
+		this.attribute("horizontal", barcode.getHorizontal());
+		this.attribute("size", barcode.getSize());
+		this.attribute("color", barcode.getColor());
+		this.attribute("symbology", barcode.getSymbology());
+		this.attribute("pattern", barcode.getPattern());
+		this.end("Barcode", barcode.getValue());
+	}
+
+	protected void write(DocumentModel.Place place)
+			throws IOException {
+		this.indent(this.depth);
+		this.writer.write("<Place");
+		this.attribute("page", place.getPage());
+		this.attribute("left", place.getLeft());
+		this.attribute("top", place.getTop());
+		this.attribute("layout", place.getLayout());
+		this.writer.write("/>\n");
+	}
+
+	protected void write(DocumentModel.Value value)
+			throws IOException {
+		if (value instanceof DocumentModel.Text) {
+			this.write((DocumentModel.Text)value);
+			return;
+		}
+		if (value instanceof DocumentModel.Rectangle) {
+			this.write((DocumentModel.Rectangle)value);
+			return;
+		}
+		if (value instanceof DocumentModel.Barcode) {
+			this.write((DocumentModel.Barcode)value);
+			return;
+		}
+		if (value instanceof DocumentModel.Place) {
+			this.write((DocumentModel.Place)value);
+			return;
+		}
+		throw new UnsupportedOperationException();
+	}
+
+	protected void write(DocumentModel.Layout layout)
+			throws IOException {
+		this.indent(2);
+		this.writer.write("<Layout");
+		this.attribute("name", layout.getName());
+		this.attribute("width", layout.getWidth());
+		this.attribute("height", layout.getHeight());
+		if (layout.getValues() == null || layout.getValues().isEmpty()) {
+			this.writer.write("/>\n");
+			return;
+		}
+		this.writer.write(">\n");
+		this.depth = 3;
+		try {
+			for (DocumentModel.Value value : layout.getValues()) this.write(value);
+		}
+		finally {
+			this.depth = 2;
+		}
+		this.indent(2);
+		this.writer.write("</Layout>\n");
+	}
+
+	public void write(DocumentModel model)
+			throws IOException {
+		this.writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+		this.writer.write("<DocumentModel");
+		this.attribute("version", model.getVersion());
+		if (model.getFonts() == null && model.getLayouts() == null && model.getValues() == null) {
+			this.writer.write("/>\n");
+			this.writer.flush();
+			return;
+		}
+		this.writer.write(">\n");
+		if (model.getFonts() != null) {
+			this.indent(1);
+			if (model.getFonts().isEmpty()) {
+				this.writer.write("<Fonts/>\n");
+			}
+			else {
+				this.writer.write("<Fonts>\n");
+				for (DocumentModel.Font font : model.getFonts()) this.write(font);
+				this.indent(1);
+				this.writer.write("</Fonts>\n");
+			}
+		}
+		if (model.getLayouts() != null) {
+			this.indent(1);
+			if (model.getLayouts().isEmpty()) {
+				this.writer.write("<Layouts/>\n");
+			}
+			else {
+				this.writer.write("<Layouts>\n");
+				for (DocumentModel.Layout layout : model.getLayouts()) this.write(layout);
+				this.indent(1);
+				this.writer.write("</Layouts>\n");
+			}
+		}
+		if (model.getValues() != null) {
+			this.indent(1);
+			if (model.getValues().isEmpty()) {
+				this.writer.write("<Values/>\n");
+			}
+			else {
+				this.writer.write("<Values>\n");
+				for (DocumentModel.Value value : model.getValues()) this.write(value);
+				this.indent(1);
+				this.writer.write("</Values>\n");
+			}
+		}
+		this.writer.write("</DocumentModel>\n");
+		this.writer.flush();
+	}
+
+	public static void write(DocumentModel model, OutputStream output)
+			throws IOException {
+		new DocumentModelWriter(output).write(model);
+	}
+
+	public static void write(DocumentModel model, File output)
+			throws IOException {
+		try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(output))) {
+			DocumentModelWriter.write(model, stream);
+		}
+	}
+
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfCopy;
+
+/*
+ * every worker thread writes its share of the ranges from a reader of its
+ * own: a duplicate of the parsed object tree for a PreparedTemplate, or a
+ * partial reader over the mapped file for a file, so that a large source
+ * is never loaded into the heap. PdfCopy closes the file once a range is
+ * written and the partial reader maps it again for the next range.
+ */
+public class Extractor {
+
+	public static final class Range {
+
+		private final int page;
+
+		private final int length;
+
+		private final File destination;
+
+		public Range(
+				int page,
+				int length,
+				File destination) {
+			this.page = page;
+			this.length = length;
+			this.destination = destination;
+		}
+
+		public int getPage() {
+			return this.page;
+		}
+
+		public int getLength() {
+			return this.length;
+		}
+
+		public File getDestination() {
+			return this.destination;
+		}
+
+		@Override
+		public String toString() {
+			return this.destination + " (" + this.page + '+' + this.length + ')';
+		}
+
+	}
+
+	private final int parallelism;
+
+	private final ExecutorService executor;
+
+	public Extractor(int parallelism) {
+		final AtomicInteger sequence;
+
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.parallelism = parallelism;
+		sequence = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread;
+
+				thread = new Thread(
+						runnable,
+						Extractor.class.getSimpleName() + '-' + sequence.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+	}
+
+	public Extractor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/*
+	 * page objects are copied as they are: rotation stays a page
+	 * attribute, annotations are kept and resources are shared between
+	 * the pages instead of wrapping each page in a form xobject.
+	 */
+	public static void extract(
+			PdfReader reader,
+			OutputStream destination,
+			int page,
+			int length)
+					throws IOException {
+		try {
+			PdfCopy writer;
+			Document document;
+			int index;
+
+			document = new Document(reader.getPageSizeWithRotation(page));
+			writer = new PdfCopy(document, destination);
+			document.open();
+			for (index = 0; index < length; index ++)
+				writer.addPage(writer.getImportedPage(reader, page + index));
+			document.close();
+		}
+		catch (DocumentException cause) {
+			throw new IOException(cause);
+		}
+	}
+
+	public static void extract(
+			PdfReader reader,
+			File destination,
+			int page,
+			int length)
+					throws IOException {
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			Extractor.extract(reader, output, page, length);
+		}
+	}
+
+	protected void await(Future<Void> future)
+			throws IOException {
+		boolean interrupted;
+
+		interrupted = false;
+		try {
+			while (true) {
+				try {
+					future.get();
+					return;
+				}
+				catch (InterruptedException ignored) {
+					/* the lane still writes its ranges, restore the flag later */
+					interrupted = true;
+				}
+				catch (ExecutionException cause) {
+					if (cause.getCause() instanceof IOException)
+						throw (IOException)cause.getCause();
+					if (cause.getCause() instanceof RuntimeException)
+						throw (RuntimeException)cause.getCause();
+					throw new IOException(cause.getCause());
+				}
+			}
+		}
+		finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	protected static int pages(File source)
+			throws IOException {
+		PdfReader reader;
+
+		reader = PdfFiles.open(source);
+		try {
+			return reader.getNumberOfPages();
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	protected void extract(
+			final Concatenator.Source source,
+			int pages,
+			final List<Range> ranges)
+					throws IOException {
+		final int lanes;
+		List<Future<Void>> futures;
+		IOException failure;
+		int lane;
+
+		for (Range range : ranges) {
+			if (range.getPage() < 1 ||
+					range.getLength() < 1 ||
+					range.getPage() + range.getLength() - 1 > pages)
+				throw new IOException(
+						String.format(
+								"failed on extract pages %d to %d" +
+								" (document has %d pages)",
+								range.getPage(),
+								range.getPage() + range.getLength() - 1,
+								pages));
+		}
+		lanes = Math.min(this.parallelism, ranges.size());
+		futures = new ArrayList<Future<Void>>(lanes);
+		for (lane = 0; lane < lanes; lane ++) {
+			final int first;
+
+			first = lane;
+			futures.add(this.executor.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					PdfReader reader;
+					IOException failure;
+					int index;
+
+					reader = source.open();
+					failure = null;
+					try {
+						// a failing range does not stop the rest of the lane
+						for (index = first; index < ranges.size(); index += lanes) {
+							Range range;
+
+							range = ranges.get(index);
+							try {
+								Extractor.extract(
+										reader,
+										range.getDestination(),
+										range.getPage(),
+										range.getLength());
+							}
+							catch (IOException cause) {
+								if (failure == null) failure = cause;
+							}
+						}
+					}
+					finally {
+						source.close(reader);
+					}
+					if (failure != null) throw failure;
+					return null;
+				}
+
+			}));
+		}
+		// wait for every range so that no task outlives a failure
+		failure = null;
+		for (Future<Void> future : futures) {
+			try {
+				this.await(future);
+			}
+			catch (IOException cause) {
+				if (failure == null) failure = cause;
+			}
+			catch (RuntimeException cause) {
+				if (failure == null) failure = new IOException(cause);
+			}
+		}
+		if (failure != null) throw failure;
+	}
+
+	public void extract(
+			PreparedTemplate source,
+			List<Range> ranges)
+					throws IOException {
+		this.extract(
+				Concatenator.Source.of(source),
+				source.getNumberOfPages(),
+				ranges);
+	}
+
+	public void extract(
+			File source,
+			List<Range> ranges)
+					throws IOException {
+		this.extract(
+				Concatenator.Source.of(source),
+				Extractor.pages(source),
+				ranges);
+	}
+
+	/*
+	 * pattern: a java.util.Formatter pattern given the chunk number
+	 * (from 1), the first page and the last page, e.g. "part-%04d.pdf".
+	 */
+	public static File destination(String pattern, int number, int first, int last) {
+		return new File(String.format(pattern, number, first, last));
+	}
+
+	public static List<Range> ranges(
+			int pages,
+			int size,
+			String pattern) {
+		List<Range> ranges;
+		int page;
+
+		if (size <= 0)
+			throw new IllegalArgumentException("size must be positive");
+		ranges = new ArrayList<Range>();
+		for (page = 1; page <= pages; page += size) {
+			int length;
+
+			length = Math.min(size, pages - page + 1);
+			ranges.add(
+					new Range(
+							page,
+							length,
+							Extractor.destination(
+									pattern,
+									ranges.size() + 1,
+									page,
+									page + length - 1)));
+		}
+		return ranges;
+	}
+
+	/*
+	 * boundaries: the first page of every chunk but the first, ascending.
+	 */
+	public static List<Range> ranges(
+			int pages,
+			int[] boundaries,
+			String pattern)
+					throws IOException {
+		List<Range> ranges;
+		int page;
+		int index;
+
+		ranges = new ArrayList<Range>(boundaries.length + 1);
+		page = 1;
+		for (index = 0; index <= boundaries.length; index ++) {
+			int next;
+
+			next = index < boundaries.length ? boundaries[index] : pages + 1;
+			if (next <= page || next > pages + 1)
+				throw new IOException(
+						String.format(
+								"failed on burst document at page %d" +
+								" (document has %d pages)",
+								next,
+								pages));
+			ranges.add(
+					new Range(
+							page,
+							next - page,
+							Extractor.destination(
+									pattern,
+									ranges.size() + 1,
+									page,
+									next - 1)));
+			page = next;
+		}
+		return ranges;
+	}
+
+	public List<Range> burst(
+			PreparedTemplate source,
+			String pattern,
+			int size)
+					throws IOException {
+		List<Range> ranges;
+
+		ranges = Extractor.ranges(source.getNumberOfPages(), size, pattern);
+		this.extract(source, ranges);
+		return ranges;
+	}
+
+	public List<Range> burst(
+			PreparedTemplate source,
+			String pattern,
+			int[] boundaries)
+					throws IOException {
+		List<Range> ranges;
+
+		ranges = Extractor.ranges(source.getNumberOfPages(), boundaries, pattern);
+		this.extract(source, ranges);
+		return ranges;
+	}
+
+	public List<Range> burst(
+			File source,
+			String pattern,
+			int size)
+					throws IOException {
+		List<Range> ranges;
+		int pages;
+
+		pages = Extractor.pages(source);
+		ranges = Extractor.ranges(pages, size, pattern);
+		this.extract(Concatenator.Source.of(source), pages, ranges);
+		return ranges;
+	}
+
+	public List<Range> burst(
+			File source,
+			String pattern,
+			int[] boundaries)
+					throws IOException {
+		List<Range> ranges;
+		int pages;
+
+		pages = Extractor.pages(source);
+		ranges = Extractor.ranges(pages, boundaries, pattern);
+		this.extract(Concatenator.Source.of(source), pages, ranges);
+		return ranges;
+	}
+
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+}
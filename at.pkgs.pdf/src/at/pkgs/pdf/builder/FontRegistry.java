@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ExecutionException;
+import java.io.IOException;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.BaseFont;
+
+public class FontRegistry {
+
+	public static final String CAPACITY_PROPERTY = FontRegistry.class.getName() + ".capacity";
+
+	public static final int DEFAULT_CAPACITY = 16;
+
+	public static final class Key {
+
+		private final String file;
+
+		private final String encoding;
+
+		private final boolean embeded;
+
+		public Key(
+				String file,
+				String encoding,
+				boolean embeded) {
+			if (file == null) throw new NullPointerException("file");
+			this.file = file;
+			this.encoding = encoding;
+			this.embeded = embeded;
+		}
+
+		public Key(DocumentModel.Font model) {
+			this(model.getFile(), model.getEncoding(), model.getEmbeded());
+		}
+
+		public String getFile() {
+			return this.file;
+		}
+
+		public String getEncoding() {
+			return this.encoding;
+		}
+
+		public boolean getEmbeded() {
+			return this.embeded;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash;
+
+			hash = this.file.hashCode();
+			hash = hash * 31 + (this.encoding == null ? 0 : this.encoding.hashCode());
+			hash = hash * 31 + (this.embeded ? 1 : 0);
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			Key other;
+
+			if (this == object) return true;
+			if (!(object instanceof Key)) return false;
+			other = (Key)object;
+			if (!this.file.equals(other.file)) return false;
+			if (this.encoding == null ?
+					other.encoding != null :
+					!this.encoding.equals(other.encoding)) return false;
+			return this.embeded == other.embeded;
+		}
+
+		@Override
+		public String toString() {
+			return this.file + ' ' + this.encoding + ' ' + this.embeded;
+		}
+
+	}
+
+	public static final class Statistics {
+
+		private final long hits;
+
+		private final long misses;
+
+		private final long evictions;
+
+		private final int size;
+
+		private final int capacity;
+
+		public Statistics(
+				long hits,
+				long misses,
+				long evictions,
+				int size,
+				int capacity) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.size = size;
+			this.capacity = capacity;
+		}
+
+		public long getHits() {
+			return this.hits;
+		}
+
+		public long getMisses() {
+			return this.misses;
+		}
+
+		public long getEvictions() {
+			return this.evictions;
+		}
+
+		public int getSize() {
+			return this.size;
+		}
+
+		public int getCapacity() {
+			return this.capacity;
+		}
+
+		public double getHitRatio() {
+			long total;
+
+			total = this.hits + this.misses;
+			return total == 0L ? 0D : (double)this.hits / (double)total;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"hits=%d, misses=%d, evictions=%d, size=%d/%d",
+					this.hits,
+					this.misses,
+					this.evictions,
+					this.size,
+					this.capacity);
+		}
+
+	}
+
+	private static final FontRegistry DEFAULT = new FontRegistry(
+			Integer.getInteger(
+					FontRegistry.CAPACITY_PROPERTY,
+					FontRegistry.DEFAULT_CAPACITY));
+
+	private final Map<Key, FutureTask<BaseFont>> fonts;
+
+	private int capacity;
+
+	private long hits;
+
+	private long misses;
+
+	private long evictions;
+
+	public FontRegistry(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		this.fonts = new LinkedHashMap<Key, FutureTask<BaseFont>>(16, 0.75F, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Key, FutureTask<BaseFont>> eldest) {
+				if (this.size() <= FontRegistry.this.capacity) return false;
+				FontRegistry.this.evictions ++;
+				return true;
+			}
+
+		};
+		this.capacity = capacity;
+		this.hits = 0L;
+		this.misses = 0L;
+		this.evictions = 0L;
+	}
+
+	public FontRegistry() {
+		this(FontRegistry.DEFAULT_CAPACITY);
+	}
+
+	public synchronized int getCapacity() {
+		return this.capacity;
+	}
+
+	public synchronized void setCapacity(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		this.capacity = capacity;
+		while (this.fonts.size() > this.capacity) {
+			this.fonts.remove(this.fonts.keySet().iterator().next());
+			this.evictions ++;
+		}
+	}
+
+	public synchronized Statistics getStatistics() {
+		return new Statistics(
+				this.hits,
+				this.misses,
+				this.evictions,
+				this.fonts.size(),
+				this.capacity);
+	}
+
+	public synchronized void clear() {
+		this.fonts.clear();
+	}
+
+	protected BaseFont load(Key key)
+			throws IOException, DocumentException {
+		// bypass the unbounded cache in BaseFont so that eviction frees the font
+		return BaseFont.createFont(
+				key.getFile(),
+				key.getEncoding(),
+				key.getEmbeded(),
+				BaseFont.NOT_CACHED,
+				null,
+				null);
+	}
+
+	public BaseFont get(final Key key)
+			throws IOException, DocumentException {
+		FutureTask<BaseFont> task;
+		boolean owner;
+		BaseFont font;
+		boolean interrupted;
+
+		synchronized (this) {
+			task = this.fonts.get(key);
+			owner = (task == null);
+			if (owner) {
+				task = new FutureTask<BaseFont>(new Callable<BaseFont>() {
+
+					@Override
+					public BaseFont call() throws Exception {
+						return FontRegistry.this.load(key);
+					}
+
+				});
+				this.fonts.put(key, task);
+				this.misses ++;
+			}
+			else {
+				this.hits ++;
+			}
+		}
+		if (owner) task.run();
+		font = null;
+		interrupted = false;
+		try {
+			while (font == null) {
+				try {
+					font = task.get();
+				}
+				catch (InterruptedException ignored) {
+					/* the font is shared, wait for it and restore the flag */
+					interrupted = true;
+				}
+			}
+			return font;
+		}
+		catch (ExecutionException cause) {
+			synchronized (this) {
+				if (this.fonts.get(key) == task) this.fonts.remove(key);
+			}
+			if (cause.getCause() instanceof IOException)
+				throw (IOException)cause.getCause();
+			if (cause.getCause() instanceof DocumentException)
+				throw (DocumentException)cause.getCause();
+			if (cause.getCause() instanceof RuntimeException)
+				throw (RuntimeException)cause.getCause();
+			throw new IOException(cause.getCause());
+		}
+		finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	public BaseFont get(
+			String file,
+			String encoding,
+			boolean embeded)
+					throws IOException, DocumentException {
+		return this.get(new Key(file, encoding, embeded));
+	}
+
+	public BaseFont get(DocumentModel.Font model)
+			throws IOException, DocumentException {
+		return this.get(new Key(model));
+	}
+
+	public static FontRegistry getDefault() {
+		return FontRegistry.DEFAULT;
+	}
+
+}
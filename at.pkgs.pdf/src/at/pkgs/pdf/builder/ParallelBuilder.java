@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.Iterator;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import com.lowagie.text.DocumentException;
+
+public class ParallelBuilder {
+
+	public static final class Statistics {
+
+		private final int documents;
+
+		private final long elapsed;
+
+		public Statistics(
+				int documents,
+				long elapsed) {
+			this.documents = documents;
+			this.elapsed = elapsed;
+		}
+
+		public int getDocuments() {
+			return this.documents;
+		}
+
+		public long getElapsedNanos() {
+			return this.elapsed;
+		}
+
+		public double getDocumentsPerSecond() {
+			if (this.elapsed <= 0L) return 0D;
+			return (double)this.documents * 1000000000D / (double)this.elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%d documents in %.3f sec (%.1f documents/sec)",
+					this.documents,
+					(double)this.elapsed / 1000000000D,
+					this.getDocumentsPerSecond());
+		}
+
+	}
+
+	protected static interface Sink {
+
+		public void accept(byte[] document)
+				throws IOException, DocumentException;
+
+	}
+
+	private final PreparedTemplate template;
+
+	private final FontRegistry registry;
+
+	private final int parallelism;
+
+	private final ExecutorService executor;
+
+	public ParallelBuilder(
+			PreparedTemplate template,
+			FontRegistry registry,
+			int parallelism) {
+		final AtomicInteger sequence;
+
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.template = template;
+		this.registry = registry;
+		this.parallelism = parallelism;
+		sequence = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread;
+
+				thread = new Thread(
+						runnable,
+						ParallelBuilder.class.getSimpleName() + '-' + sequence.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+	}
+
+	public ParallelBuilder(
+			PreparedTemplate template,
+			int parallelism) {
+		this(template, FontRegistry.getDefault(), parallelism);
+	}
+
+	public ParallelBuilder(
+			PreparedTemplate template) {
+		this(template, Runtime.getRuntime().availableProcessors());
+	}
+
+	public PreparedTemplate getTemplate() {
+		return this.template;
+	}
+
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	protected void build(
+			DocumentModel model,
+			OutputStream destination)
+					throws IOException, DocumentException {
+		DocumentBuilder builder;
+
+		builder = new DocumentBuilder(this.template, destination, this.registry);
+		try {
+			builder.merge(model);
+			builder.close();
+		}
+		finally {
+			builder.release();
+		}
+	}
+
+	protected void await(Future<byte[]> future, Sink sink)
+			throws IOException, DocumentException {
+		byte[] document;
+		boolean interrupted;
+
+		document = null;
+		interrupted = false;
+		try {
+			while (true) {
+				try {
+					document = future.get();
+					break;
+				}
+				catch (InterruptedException ignored) {
+					/* the task still renders, restore the flag later */
+					interrupted = true;
+				}
+				catch (ExecutionException cause) {
+					if (cause.getCause() instanceof IOException)
+						throw (IOException)cause.getCause();
+					if (cause.getCause() instanceof DocumentException)
+						throw (DocumentException)cause.getCause();
+					if (cause.getCause() instanceof RuntimeException)
+						throw (RuntimeException)cause.getCause();
+					throw new IOException(cause.getCause());
+				}
+			}
+		}
+		finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+		if (sink != null) sink.accept(document);
+	}
+
+	protected Statistics render(
+			Iterator<Callable<byte[]>> tasks,
+			Sink sink)
+					throws IOException, DocumentException {
+		Deque<Future<byte[]>> pending;
+		long started;
+		int count;
+
+		pending = new ArrayDeque<Future<byte[]>>();
+		started = System.nanoTime();
+		count = 0;
+		try {
+			while (tasks.hasNext()) {
+				// keep a bounded window in flight so memory does not grow with the input
+				if (pending.size() >= this.parallelism * 2)
+					this.await(pending.removeFirst(), sink);
+				pending.addLast(this.executor.submit(tasks.next()));
+				count ++;
+			}
+			while (!pending.isEmpty())
+				this.await(pending.removeFirst(), sink);
+		}
+		finally {
+			for (Future<byte[]> future : pending) future.cancel(true);
+		}
+		return new Statistics(count, System.nanoTime() - started);
+	}
+
+	public Statistics render(
+			final Iterator<DocumentModel> models,
+			final Iterator<File> destinations)
+					throws IOException, DocumentException {
+		return this.render(new Iterator<Callable<byte[]>>() {
+
+			@Override
+			public boolean hasNext() {
+				return models.hasNext();
+			}
+
+			@Override
+			public Callable<byte[]> next() {
+				final DocumentModel model;
+				final File destination;
+
+				model = models.next();
+				if (!destinations.hasNext())
+					throw new IllegalArgumentException("destinations are fewer than models");
+				destination = destinations.next();
+				return new Callable<byte[]>() {
+
+					@Override
+					public byte[] call() throws Exception {
+						try (
+								OutputStream output = new BufferedOutputStream(
+										new FileOutputStream(
+												destination))) {
+							ParallelBuilder.this.build(model, output);
+						}
+						return null;
+					}
+
+				};
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		}, null);
+	}
+
+	public Statistics render(
+			final Iterator<DocumentModel> models,
+			OutputStream destination)
+					throws IOException, DocumentException {
+		final BatchBuilder batch;
+		Statistics statistics;
+
+		batch = new BatchBuilder(this.template, destination, this.registry);
+		statistics = this.render(new Iterator<Callable<byte[]>>() {
+
+			@Override
+			public boolean hasNext() {
+				return models.hasNext();
+			}
+
+			@Override
+			public Callable<byte[]> next() {
+				final DocumentModel model;
+
+				model = models.next();
+				return new Callable<byte[]>() {
+
+					@Override
+					public byte[] call() throws Exception {
+						ByteArrayOutputStream buffer;
+
+						buffer = new ByteArrayOutputStream(
+								ParallelBuilder.this.template.getLength() * 2);
+						ParallelBuilder.this.build(model, buffer);
+						return buffer.toByteArray();
+					}
+
+				};
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		}, new Sink() {
+
+			@Override
+			public void accept(byte[] document)
+					throws IOException, DocumentException {
+				batch.add(document);
+			}
+
+		});
+		batch.close();
+		return statistics;
+	}
+
+	public Statistics render(
+			Iterator<DocumentModel> models,
+			File destination)
+					throws IOException, DocumentException {
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			return this.render(models, output);
+		}
+	}
+
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.io.File;
+import java.io.IOException;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.RandomAccessFileOrArray;
+
+public final class PdfFiles {
+
+	private PdfFiles() {
+		// nothing
+	}
+
+	public static RandomAccessFileOrArray map(File file)
+			throws IOException {
+		if (!file.isFile())
+			throw new IOException("file not found: " + file);
+		return new RandomAccessFileOrArray(file.getAbsolutePath(), false, false);
+	}
+
+	/*
+	 * opens the file in partial mode: the cross-reference table is read
+	 * eagerly and every other object is loaded from the mapped file on
+	 * demand, so the heap use does not depend on the file size.
+	 */
+	public static PdfReader open(File file)
+			throws IOException {
+		return new PdfReader(PdfFiles.map(file), null);
+	}
+
+	public static PdfReader open(String file)
+			throws IOException {
+		return PdfFiles.open(new File(file));
+	}
+
+	public static PdfReader open(byte[] data)
+			throws IOException {
+		return new PdfReader(new RandomAccessFileOrArray(data), null);
+	}
+
+}
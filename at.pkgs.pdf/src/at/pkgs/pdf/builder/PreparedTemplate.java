@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfStamper;
+
+/*
+ * The template is parsed once into a master reader which is never handed
+ * out; every document gets its own duplicate of the parsed object tree.
+ */
+public class PreparedTemplate {
+
+	private final byte[] data;
+
+	private final PdfReader master;
+
+	private final Rectangle[] cropBoxes;
+
+	public PreparedTemplate(byte[] data)
+			throws IOException {
+		int page;
+
+		this.data = data;
+		this.master = new PdfReader(data);
+		this.cropBoxes = new Rectangle[this.master.getNumberOfPages()];
+		for (page = 1; page <= this.cropBoxes.length; page ++)
+			this.cropBoxes[page - 1] = this.master.getCropBox(page);
+	}
+
+	public int getNumberOfPages() {
+		return this.cropBoxes.length;
+	}
+
+	Rectangle cropBox(int page) {
+		return this.cropBoxes[page - 1];
+	}
+
+	public Rectangle getCropBox(int page) {
+		return new Rectangle(this.cropBox(page));
+	}
+
+	public int getLength() {
+		return this.data.length;
+	}
+
+	public InputStream openStream() {
+		return new ByteArrayInputStream(this.data);
+	}
+
+	public PdfReader createReader() {
+		return new PdfReader(this.master);
+	}
+
+	public PdfStamper createStamper(OutputStream destination)
+			throws IOException, DocumentException {
+		return new PdfStamper(this.createReader(), destination);
+	}
+
+	public static PreparedTemplate load(InputStream source)
+			throws IOException {
+		ByteArrayOutputStream buffer;
+		byte[] bytes;
+		int length;
+
+		buffer = new ByteArrayOutputStream();
+		bytes = new byte[8192];
+		while ((length = source.read(bytes)) >= 0)
+			buffer.write(bytes, 0, length);
+		return new PreparedTemplate(buffer.toByteArray());
+	}
+
+	public static PreparedTemplate load(File source)
+			throws IOException {
+		return new PreparedTemplate(Files.readAllBytes(source.toPath()));
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+/*
+ * receives the lifecycle events of a DocumentBuilder on the thread
+ * rendering the document; elapsed times are nanoseconds. a listener set
+ * as the default of DocumentBuilder sees every document, concurrently.
+ */
+public interface RenderListener {
+
+	public static enum Phase {
+
+		/* duplicating a prepared template and creating the stamper */
+		TEMPLATE,
+
+		/* loading one font declared by a model */
+		FONT,
+
+		/* compiling values into a render plan */
+		COMPILE,
+
+		/* drawing a render plan */
+		RENDER,
+
+		/* compressing and writing the document */
+		CLOSE,
+
+	}
+
+	public static class Adapter implements RenderListener {
+
+		@Override
+		public void start(DocumentBuilder builder, Phase phase) {
+			// do nothing
+		}
+
+		@Override
+		public void end(DocumentBuilder builder, Phase phase, long elapsed) {
+			// do nothing
+		}
+
+		@Override
+		public void value(DocumentBuilder builder, DocumentModel.Value value, long elapsed) {
+			// do nothing
+		}
+
+		@Override
+		public void operation(DocumentBuilder builder, RenderPlan.Operation operation, long elapsed) {
+			// do nothing
+		}
+
+		@Override
+		public void page(DocumentBuilder builder, int page) {
+			// do nothing
+		}
+
+		@Override
+		public void output(DocumentBuilder builder, long length) {
+			// do nothing
+		}
+
+	}
+
+	public static class Composite implements RenderListener {
+
+		private final RenderListener[] listeners;
+
+		public Composite(RenderListener... listeners) {
+			this.listeners = listeners.clone();
+		}
+
+		@Override
+		public void start(DocumentBuilder builder, Phase phase) {
+			for (RenderListener listener : this.listeners) listener.start(builder, phase);
+		}
+
+		@Override
+		public void end(DocumentBuilder builder, Phase phase, long elapsed) {
+			for (RenderListener listener : this.listeners) listener.end(builder, phase, elapsed);
+		}
+
+		@Override
+		public void value(DocumentBuilder builder, DocumentModel.Value value, long elapsed) {
+			for (RenderListener listener : this.listeners) listener.value(builder, value, elapsed);
+		}
+
+		@Override
+		public void operation(DocumentBuilder builder, RenderPlan.Operation operation, long elapsed) {
+			for (RenderListener listener : this.listeners) listener.operation(builder, operation, elapsed);
+		}
+
+		@Override
+		public void page(DocumentBuilder builder, int page) {
+			for (RenderListener listener : this.listeners) listener.page(builder, page);
+		}
+
+		@Override
+		public void output(DocumentBuilder builder, long length) {
+			for (RenderListener listener : this.listeners) listener.output(builder, length);
+		}
+
+	}
+
+	public void start(DocumentBuilder builder, Phase phase);
+
+	public void end(DocumentBuilder builder, Phase phase, long elapsed);
+
+	/* a value compiled into an operation (or skipped as empty) */
+	public void value(DocumentBuilder builder, DocumentModel.Value value, long elapsed);
+
+	/* an operation drawn onto the page */
+	public void operation(DocumentBuilder builder, RenderPlan.Operation operation, long elapsed);
+
+	/* the page drawn on changed */
+	public void page(DocumentBuilder builder, int page);
+
+	/* the document is written, length in bytes */
+	public void output(DocumentBuilder builder, long length);
+
+}
@@ -0,0 +1,974 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collections;
+import java.io.IOException;
+import java.awt.Color;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfTemplate;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.ColumnText;
+
+public final class RenderPlan {
+
+	public static abstract class Operation {
+
+		private final int page;
+
+		protected Operation(int page) {
+			this.page = page;
+		}
+
+		public int getPage() {
+			return this.page;
+		}
+
+		public abstract void draw(PdfContentByte content)
+				throws DocumentException;
+
+		public void draw(
+				PdfContentByte content,
+				Map<Object, PdfTemplate> forms)
+						throws DocumentException {
+			this.draw(content);
+		}
+
+	}
+
+	public static final class Text extends Operation {
+
+		private final float left;
+
+		private final float bottom;
+
+		private final float right;
+
+		private final float top;
+
+		private final float leading;
+
+		private final int alignment;
+
+		private final Font font;
+
+		private final String value;
+
+		public Text(
+				int page,
+				float left,
+				float bottom,
+				float right,
+				float top,
+				float leading,
+				int alignment,
+				Font font,
+				String value) {
+			super(page);
+			this.left = left;
+			this.bottom = bottom;
+			this.right = right;
+			this.top = top;
+			this.leading = leading;
+			this.alignment = alignment;
+			this.font = font;
+			this.value = value;
+		}
+
+		public Font getFont() {
+			return this.font;
+		}
+
+		public String getValue() {
+			return this.value;
+		}
+
+		@Override
+		public void draw(PdfContentByte content)
+				throws DocumentException {
+			ColumnText column;
+
+			column = new ColumnText(content);
+			column.setSimpleColumn(
+					this.left,
+					this.bottom,
+					this.right,
+					this.top);
+			column.setLeading(this.leading);
+			column.setAlignment(this.alignment);
+			column.addText(new Phrase(this.value, this.font));
+			column.go();
+		}
+
+	}
+
+	public static final class Line extends Operation {
+
+		private final float left;
+
+		private final float baseline;
+
+		private final BaseFont font;
+
+		private final float size;
+
+		private final Color color;
+
+		private final String value;
+
+		public Line(
+				int page,
+				float left,
+				float baseline,
+				BaseFont font,
+				float size,
+				Color color,
+				String value) {
+			super(page);
+			this.left = left;
+			this.baseline = baseline;
+			this.font = font;
+			this.size = size;
+			this.color = color;
+			this.value = value;
+		}
+
+		public String getValue() {
+			return this.value;
+		}
+
+		@Override
+		public void draw(PdfContentByte content) {
+			content.beginText();
+			content.setTextMatrix(this.left, this.baseline);
+			content.setFontAndSize(this.font, this.size);
+			if (this.color != null) content.setColorFill(this.color);
+			content.showText(this.value);
+			if (this.color != null) content.resetRGBColorFill();
+			content.endText();
+		}
+
+	}
+
+	public static final class Rectangle extends Operation {
+
+		private final float[] boxes;
+
+		private final boolean stroke;
+
+		private final float lineWidth;
+
+		private final Color color;
+
+		public Rectangle(
+				int page,
+				float[] boxes,
+				boolean stroke,
+				float lineWidth,
+				Color color) {
+			super(page);
+			if (boxes.length == 0 || boxes.length % 4 != 0)
+				throw new IllegalArgumentException("boxes must be left, bottom, width, height quadruples");
+			this.boxes = boxes;
+			this.stroke = stroke;
+			this.lineWidth = lineWidth;
+			this.color = color;
+		}
+
+		public Rectangle(
+				int page,
+				float left,
+				float bottom,
+				float width,
+				float height,
+				boolean stroke,
+				float lineWidth,
+				Color color) {
+			this(
+					page,
+					new float[] { left, bottom, width, height },
+					stroke,
+					lineWidth,
+					color);
+		}
+
+		public int getCount() {
+			return this.boxes.length / 4;
+		}
+
+		public boolean isStroke() {
+			return this.stroke;
+		}
+
+		public float getLineWidth() {
+			return this.lineWidth;
+		}
+
+		public Color getColor() {
+			return this.color;
+		}
+
+		public boolean isCompatible(Rectangle other) {
+			if (this.getPage() != other.getPage()) return false;
+			if (this.stroke != other.stroke) return false;
+			if (this.stroke && this.lineWidth != other.lineWidth) return false;
+			return this.color == null ?
+					other.color == null :
+					this.color.equals(other.color);
+		}
+
+		public static Rectangle coalesce(List<Rectangle> rectangles) {
+			Rectangle first;
+			float[] boxes;
+			int length;
+
+			first = rectangles.get(0);
+			if (rectangles.size() == 1) return first;
+			length = 0;
+			for (Rectangle rectangle : rectangles) length += rectangle.boxes.length;
+			boxes = new float[length];
+			length = 0;
+			for (Rectangle rectangle : rectangles) {
+				System.arraycopy(rectangle.boxes, 0, boxes, length, rectangle.boxes.length);
+				length += rectangle.boxes.length;
+			}
+			return new Rectangle(
+					first.getPage(),
+					boxes,
+					first.stroke,
+					first.lineWidth,
+					first.color);
+		}
+
+		@Override
+		public void draw(PdfContentByte content) {
+			int index;
+
+			content.saveState();
+			if (this.stroke) {
+				content.setLineWidth(this.lineWidth);
+				content.setColorStroke(this.color);
+			}
+			else {
+				content.setColorFill(this.color);
+			}
+			for (index = 0; index < this.boxes.length; index += 4) {
+				content.rectangle(
+						this.boxes[index],
+						this.boxes[index + 1],
+						this.boxes[index + 2],
+						this.boxes[index + 3]);
+			}
+			if (this.stroke) content.stroke();
+			else content.fill();
+			content.restoreState();
+		}
+
+	}
+
+	public static final class Barcode extends Operation {
+
+		private final float left;
+
+		private final float bottom;
+
+		private final float width;
+
+		private final float height;
+
+		private final Color color;
+
+		private final float[] bars;
+
+		private final String key;
+
+		public Barcode(
+				int page,
+				float left,
+				float bottom,
+				float width,
+				float height,
+				Color color,
+				float[] bars,
+				String key) {
+			super(page);
+			this.left = left;
+			this.bottom = bottom;
+			this.width = width;
+			this.height = height;
+			this.color = color;
+			this.bars = bars;
+			this.key = key;
+		}
+
+		public String getKey() {
+			return this.key;
+		}
+
+		protected void bars(PdfContentByte canvas, float left, float bottom) {
+			int index;
+
+			canvas.saveState();
+			if (this.color != null) canvas.setColorFill(this.color);
+			for (index = 0; index < this.bars.length; index += 2)
+				canvas.rectangle(left + this.bars[index], bottom, this.bars[index + 1], this.height);
+			canvas.fill();
+			canvas.restoreState();
+		}
+
+		@Override
+		public void draw(PdfContentByte content) {
+			this.bars(content, this.left, this.bottom);
+		}
+
+		@Override
+		public void draw(
+				PdfContentByte content,
+				Map<Object, PdfTemplate> forms) {
+			PdfTemplate form;
+
+			if (this.bars.length == 0) return;
+			form = forms.get(this.key);
+			if (form == null) {
+				form = content.createTemplate(this.width, this.height);
+				this.bars(form, 0F, 0F);
+				forms.put(this.key, form);
+			}
+			content.addTemplate(form, this.left, this.bottom);
+		}
+
+	}
+
+	/*
+	 * the operations of a layout, positioned relative to its bottom left
+	 * corner, rendered once into a form xobject shared by every placement.
+	 */
+	public static final class Form extends Operation {
+
+		private final float left;
+
+		private final float bottom;
+
+		private final float width;
+
+		private final float height;
+
+		private final List<Operation> operations;
+
+		private final Object key;
+
+		public Form(
+				int page,
+				float left,
+				float bottom,
+				float width,
+				float height,
+				List<Operation> operations,
+				Object key) {
+			super(page);
+			this.left = left;
+			this.bottom = bottom;
+			this.width = width;
+			this.height = height;
+			this.operations = Collections.unmodifiableList(operations);
+			this.key = key;
+		}
+
+		public List<Operation> getOperations() {
+			return this.operations;
+		}
+
+		public Object getKey() {
+			return this.key;
+		}
+
+		@Override
+		public void draw(PdfContentByte content)
+				throws DocumentException {
+			content.saveState();
+			content.concatCTM(1F, 0F, 0F, 1F, this.left, this.bottom);
+			for (Operation operation : this.operations) operation.draw(content);
+			content.restoreState();
+		}
+
+		@Override
+		public void draw(
+				PdfContentByte content,
+				Map<Object, PdfTemplate> forms)
+						throws DocumentException {
+			PdfTemplate form;
+
+			form = forms.get(this.key);
+			if (form == null) {
+				form = content.createTemplate(this.width, this.height);
+				for (Operation operation : this.operations) operation.draw(form, forms);
+				forms.put(this.key, form);
+			}
+			content.addTemplate(form, this.left, this.bottom);
+		}
+
+	}
+
+	public static final class Page {
+
+		private final int number;
+
+		private final List<Operation> operations;
+
+		public Page(
+				int number,
+				List<Operation> operations) {
+			this.number = number;
+			this.operations = Collections.unmodifiableList(operations);
+		}
+
+		public int getNumber() {
+			return this.number;
+		}
+
+		public List<Operation> getOperations() {
+			return this.operations;
+		}
+
+	}
+
+	static abstract class Context {
+
+		private final Map<String, Color> colors;
+
+		private final Map<BaseFont, Map<String, Font>> fonts;
+
+		private final Map<DocumentModel.Layout, List<Operation>> layouts;
+
+		protected Context() {
+			this.colors = new HashMap<String, Color>();
+			this.fonts = new HashMap<BaseFont, Map<String, Font>>();
+			this.layouts = new HashMap<DocumentModel.Layout, List<Operation>>();
+		}
+
+		protected abstract BaseFont font(String name)
+				throws IOException, DocumentException;
+
+		protected abstract float height(int page);
+
+		protected DocumentModel.Layout layout(String name) {
+			return null;
+		}
+
+		protected Color color(String color) {
+			Color value;
+
+			if (color == null) return null;
+			value = this.colors.get(color);
+			if (value == null) {
+				value = DocumentBuilder.parseColor(color);
+				this.colors.put(color, value);
+			}
+			return value;
+		}
+
+		protected Font font(String name, float size, String color)
+				throws IOException, DocumentException {
+			BaseFont base;
+			Map<String, Font> fonts;
+			String key;
+			Font font;
+
+			base = this.font(name);
+			fonts = this.fonts.get(base);
+			if (fonts == null) {
+				fonts = new HashMap<String, Font>();
+				this.fonts.put(base, fonts);
+			}
+			key = Float.toString(size) + '\n' + color;
+			font = fonts.get(key);
+			if (font == null) {
+				font = DocumentBuilder.createFont(base, size, color);
+				fonts.put(key, font);
+			}
+			return font;
+		}
+
+		protected static boolean isSingleLine(String value) {
+			int index;
+
+			if (value == null || value.isEmpty()) return false;
+			if (Character.isWhitespace(value.charAt(0))) return false;
+			if (Character.isWhitespace(value.charAt(value.length() - 1))) return false;
+			for (index = 0; index < value.length(); index ++) {
+				char character;
+
+				character = value.charAt(index);
+				if (character < ' ') return false;
+				if (Character.isSurrogate(character)) return false;
+				if (character >= '\u200B' && character <= '\u200F') return false;
+				if (character >= '\u202A' && character <= '\u202E') return false;
+			}
+			return true;
+		}
+
+		/*
+		 * a value which ColumnText would lay out as exactly one line is drawn
+		 * directly at the position ColumnText would choose: the baseline is
+		 * one leading below the top of the box. a negative leading is left to
+		 * ColumnText.
+		 */
+		protected Operation line(
+				DocumentModel.Text model,
+				float bottom,
+				float top,
+				int alignment,
+				Font font) {
+			BaseFont base;
+			float baseline;
+			float width;
+			float margin;
+			float left;
+
+			if (!RenderPlan.Context.isSingleLine(model.getValue())) return null;
+			base = font.getBaseFont();
+			if (base == null) return null;
+			if (model.getLeading() < 0F) return null;
+			baseline = top - model.getLeading();
+			if (baseline < bottom) return null;
+			width = base.getWidthPoint(model.getValue(), font.getSize());
+			margin = model.getWidth() - width;
+			if (margin < 0F) return null;
+			left = model.getLeft();
+			switch (alignment) {
+			case Element.ALIGN_CENTER :
+				left += margin / 2F;
+				break;
+			case Element.ALIGN_RIGHT :
+				left += margin;
+				break;
+			}
+			return new Line(
+					model.getPage(),
+					left,
+					baseline,
+					base,
+					font.getSize(),
+					font.getColor(),
+					model.getValue());
+		}
+
+		protected Operation compile(DocumentModel.Text model)
+				throws IOException, DocumentException {
+			float height;
+			float bottom;
+			float top;
+			int alignment;
+			Font font;
+			Operation line;
+
+			height = this.height(model.getPage());
+			bottom = height - model.getTop() - model.getHeight();
+			top = height - model.getTop();
+			alignment = Element.ALIGN_LEFT;
+			if (model.getHorizontal() != null) {
+				switch (model.getHorizontal()) {
+				case LEFT :
+					alignment = Element.ALIGN_LEFT;
+					break;
+				case CENTER :
+					alignment = Element.ALIGN_CENTER;
+					break;
+				case RIGHT :
+					alignment = Element.ALIGN_RIGHT;
+					break;
+				}
+			}
+			font = this.font(
+					model.getFont(),
+					model.getSize(),
+					model.getColor());
+			line = this.line(model, bottom, top, alignment, font);
+			if (line != null) return line;
+			return new Text(
+					model.getPage(),
+					model.getLeft(),
+					bottom,
+					model.getLeft() + model.getWidth(),
+					top,
+					model.getLeading(),
+					alignment,
+					font,
+					model.getValue());
+		}
+
+		protected Operation compile(DocumentModel.Rectangle model) {
+			float bottom;
+			DocumentModel.Verb verb;
+
+			verb = model.getVerb();
+			if (verb == null) return null;
+			bottom = this.height(model.getPage()) - model.getTop() - model.getHeight();
+			if (verb instanceof DocumentModel.Stroke) {
+				DocumentModel.Stroke stroke;
+
+				stroke = (DocumentModel.Stroke)verb;
+				return new Rectangle(
+						model.getPage(),
+						model.getLeft(),
+						bottom,
+						model.getWidth(),
+						model.getHeight(),
+						true,
+						stroke.getWidth(),
+						this.color(stroke.getColor()));
+			}
+			if (verb instanceof DocumentModel.Fill) {
+				return new Rectangle(
+						model.getPage(),
+						model.getLeft(),
+						bottom,
+						model.getWidth(),
+						model.getHeight(),
+						false,
+						0F,
+						this.color(((DocumentModel.Fill)verb).getColor()));
+			}
+			throw new UnsupportedOperationException();
+		}
+
+		protected Operation compile(DocumentModel.Barcode model) {
+			String[] runs;
+			double[] widths;
+			double total;
+			float scale;
+			float left;
+			float[] bars;
+			int count;
+			int index;
+			double position;
+
+			if (model.getPattern() == null || model.getPattern().trim().isEmpty()) return null;
+			runs = model.getPattern().trim().split("\\s+");
+			widths = new double[runs.length];
+			total = 0D;
+			for (index = 0; index < runs.length; index ++) {
+				widths[index] = Double.parseDouble(runs[index]);
+				total += widths[index];
+			}
+			if (total <= 0D) return null;
+			scale = model.getSize();
+			left = model.getLeft();
+			if (model.getHorizontal() == null) {
+				scale = model.getWidth() / (float)total;
+			}
+			else {
+				float margin;
+
+				margin = model.getWidth() - ((float)total * scale);
+				switch (model.getHorizontal()) {
+				case CENTER :
+					left += margin / 2F;
+					break;
+				case LEFT :
+					break;
+				case RIGHT :
+					left += margin;
+					break;
+				}
+			}
+			bars = new float[(runs.length / 2) * 2];
+			count = 0;
+			position = 0D;
+			for (index = 0; index < runs.length; index ++) {
+				if (index % 2 == 1) {
+					bars[count ++] = (float)position * scale;
+					bars[count ++] = (float)widths[index] * scale;
+				}
+				position += widths[index];
+			}
+			return new Barcode(
+					model.getPage(),
+					left,
+					this.height(model.getPage()) - model.getTop() - model.getHeight(),
+					(float)total * scale,
+					model.getHeight(),
+					this.color(model.getColor()),
+					bars,
+					model.getPattern() + '\n' + scale + '\n' + model.getHeight() + '\n' + model.getColor());
+		}
+
+		/*
+		 * the values of a layout are compiled once in a context whose page
+		 * height is the layout height, sharing the fonts and colors of this.
+		 */
+		protected List<Operation> compile(final DocumentModel.Layout layout)
+				throws IOException, DocumentException {
+			final Context outer;
+			Context inner;
+			List<Operation> operations;
+			boolean compiled;
+
+			operations = this.layouts.get(layout);
+			if (operations != null) return operations;
+			outer = this;
+			inner = new Context() {
+
+				@Override
+				protected BaseFont font(String name)
+						throws IOException, DocumentException {
+					return outer.font(name);
+				}
+
+				@Override
+				protected float height(int page) {
+					return layout.getHeight();
+				}
+
+				@Override
+				protected DocumentModel.Layout layout(String name) {
+					return outer.layout(name);
+				}
+
+				@Override
+				protected Color color(String color) {
+					return outer.color(color);
+				}
+
+				@Override
+				protected Font font(String name, float size, String color)
+						throws IOException, DocumentException {
+					return outer.font(name, size, color);
+				}
+
+				@Override
+				protected List<Operation> compile(DocumentModel.Layout layout)
+						throws IOException, DocumentException {
+					return outer.compile(layout);
+				}
+
+				@Override
+				protected Operation compile(Context context, DocumentModel.Value value)
+						throws IOException, DocumentException {
+					return outer.compile(context, value);
+				}
+
+			};
+			/* a layout placing itself draws nothing */
+			this.layouts.put(layout, Collections.<Operation>emptyList());
+			compiled = false;
+			try {
+				operations = new ArrayList<Operation>();
+				if (layout.getValues() != null) {
+					for (DocumentModel.Value value : layout.getValues()) {
+						Operation operation;
+
+						operation = inner.compile(value);
+						if (operation != null) operations.add(operation);
+					}
+				}
+				operations = this.coalesce(operations);
+				this.layouts.put(layout, operations);
+				compiled = true;
+				return operations;
+			}
+			finally {
+				/* a failed layout is compiled again when it is placed next */
+				if (!compiled) this.layouts.remove(layout);
+			}
+		}
+
+		protected Operation compile(DocumentModel.Place model)
+				throws IOException, DocumentException {
+			DocumentModel.Layout layout;
+			List<Operation> operations;
+
+			layout = this.layout(model.getLayout());
+			if (layout == null)
+				throw new IllegalArgumentException("layout not found: " + model.getLayout());
+			operations = this.compile(layout);
+			if (operations.isEmpty()) return null;
+			return new Form(
+					model.getPage(),
+					model.getLeft(),
+					this.height(model.getPage()) - model.getTop() - layout.getHeight(),
+					layout.getWidth(),
+					layout.getHeight(),
+					operations,
+					layout);
+		}
+
+		protected Operation compile(DocumentModel.Value value)
+				throws IOException, DocumentException {
+			return this.compile(this, value);
+		}
+
+		/*
+		 * every value passes here, a value of a layout with the context of
+		 * the layout, so that an override sees all of them.
+		 */
+		protected Operation compile(Context context, DocumentModel.Value value)
+				throws IOException, DocumentException {
+			return context.dispatch(value);
+		}
+
+		protected Operation dispatch(DocumentModel.Value value)
+				throws IOException, DocumentException {
+			if (value instanceof DocumentModel.Text)
+				return this.compile((DocumentModel.Text)value);
+			if (value instanceof DocumentModel.Rectangle)
+				return this.compile((DocumentModel.Rectangle)value);
+			if (value instanceof DocumentModel.Barcode)
+				return this.compile((DocumentModel.Barcode)value);
+			if (value instanceof DocumentModel.Place)
+				return this.compile((DocumentModel.Place)value);
+			throw new UnsupportedOperationException();
+		}
+
+		protected RenderPlan compile(List<DocumentModel.Value> values)
+				throws IOException, DocumentException {
+			List<DocumentModel.Value> sorted;
+			List<Page> pages;
+			List<Operation> operations;
+			int number;
+
+			pages = new ArrayList<Page>();
+			if (values == null) return new RenderPlan(pages);
+			sorted = new ArrayList<DocumentModel.Value>(values);
+			Collections.sort(sorted, new Comparator<DocumentModel.Value>() {
+
+				@Override
+				public int compare(
+						DocumentModel.Value left,
+						DocumentModel.Value right) {
+					return left.getPage() - right.getPage();
+				}
+
+			});
+			operations = null;
+			number = 0;
+			for (DocumentModel.Value value : sorted) {
+				Operation operation;
+
+				operation = this.compile(value);
+				if (operation == null) continue;
+				if (operations == null || number != operation.getPage()) {
+					if (operations != null) pages.add(new Page(number, this.coalesce(operations)));
+					operations = new ArrayList<Operation>();
+					number = operation.getPage();
+				}
+				operations.add(operation);
+			}
+			if (operations != null) pages.add(new Page(number, this.coalesce(operations)));
+			return new RenderPlan(pages);
+		}
+
+		/*
+		 * consecutive rectangles sharing the verb, color and line width are
+		 * merged into one path painted by a single operator.
+		 */
+		protected List<Operation> coalesce(List<Operation> operations) {
+			List<Operation> result;
+			List<Rectangle> run;
+
+			result = new ArrayList<Operation>(operations.size());
+			run = new ArrayList<Rectangle>();
+			for (Operation operation : operations) {
+				if (operation instanceof Rectangle) {
+					Rectangle rectangle;
+
+					rectangle = (Rectangle)operation;
+					if (!run.isEmpty() && !run.get(0).isCompatible(rectangle)) {
+						result.add(Rectangle.coalesce(run));
+						run.clear();
+					}
+					run.add(rectangle);
+					continue;
+				}
+				if (!run.isEmpty()) {
+					result.add(Rectangle.coalesce(run));
+					run.clear();
+				}
+				result.add(operation);
+			}
+			if (!run.isEmpty()) result.add(Rectangle.coalesce(run));
+			return result;
+		}
+
+	}
+
+	private final List<Page> pages;
+
+	RenderPlan(List<Page> pages) {
+		this.pages = Collections.unmodifiableList(pages);
+	}
+
+	public List<Page> getPages() {
+		return this.pages;
+	}
+
+	public static RenderPlan compile(
+			DocumentModel model,
+			final PreparedTemplate template,
+			FontRegistry registry)
+					throws IOException, DocumentException {
+		final Map<String, BaseFont> fonts;
+		final Map<String, DocumentModel.Layout> layouts;
+
+		fonts = new HashMap<String, BaseFont>();
+		if (model.getFonts() != null) {
+			for (DocumentModel.Font font : model.getFonts())
+				fonts.put(font.getName(), registry.get(font));
+		}
+		layouts = new HashMap<String, DocumentModel.Layout>();
+		if (model.getLayouts() != null) {
+			for (DocumentModel.Layout layout : model.getLayouts())
+				layouts.put(layout.getName(), layout);
+		}
+		return new Context() {
+
+			@Override
+			protected BaseFont font(String name) {
+				return fonts.get(name);
+			}
+
+			@Override
+			protected DocumentModel.Layout layout(String name) {
+				return layouts.get(name);
+			}
+
+			@Override
+			protected float height(int page) {
+				return template.cropBox(page).getHeight();
+			}
+
+		}.compile(model.getValues());
+	}
+
+	public static RenderPlan compile(
+			DocumentModel model,
+			PreparedTemplate template)
+					throws IOException, DocumentException {
+		return RenderPlan.compile(model, template, FontRegistry.getDefault());
+	}
+
+}
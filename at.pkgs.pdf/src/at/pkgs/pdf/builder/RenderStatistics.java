@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.EnumMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * collects the events of one document: time per phase, count and time
+ * per value and operation type, the pages drawn on and the output size.
+ * not synchronized, an instance is fed by the thread rendering its
+ * document.
+ */
+public class RenderStatistics implements RenderListener {
+
+	public static final class Measure {
+
+		private long count;
+
+		private long elapsed;
+
+		public long getCount() {
+			return this.count;
+		}
+
+		public long getElapsedNanos() {
+			return this.elapsed;
+		}
+
+		void add(long elapsed) {
+			this.count ++;
+			this.elapsed += elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%d in %.3f ms",
+					this.count,
+					(double)this.elapsed / 1000000D);
+		}
+
+	}
+
+	private final Map<Phase, Measure> phases;
+
+	private final Map<String, Measure> values;
+
+	private final Map<String, Measure> operations;
+
+	private final Set<Integer> pages;
+
+	private int switches;
+
+	private long length;
+
+	public RenderStatistics() {
+		this.phases = new EnumMap<Phase, Measure>(Phase.class);
+		this.values = new TreeMap<String, Measure>();
+		this.operations = new TreeMap<String, Measure>();
+		this.pages = new TreeSet<Integer>();
+		this.switches = 0;
+		this.length = -1L;
+	}
+
+	protected static void add(Map<String, Measure> measures, Class<?> type, long elapsed) {
+		Measure measure;
+
+		measure = measures.get(type.getSimpleName());
+		if (measure == null) {
+			measure = new Measure();
+			measures.put(type.getSimpleName(), measure);
+		}
+		measure.add(elapsed);
+	}
+
+	@Override
+	public void start(DocumentBuilder builder, Phase phase) {
+		// do nothing
+	}
+
+	@Override
+	public void end(DocumentBuilder builder, Phase phase, long elapsed) {
+		Measure measure;
+
+		measure = this.phases.get(phase);
+		if (measure == null) {
+			measure = new Measure();
+			this.phases.put(phase, measure);
+		}
+		measure.add(elapsed);
+	}
+
+	@Override
+	public void value(DocumentBuilder builder, DocumentModel.Value value, long elapsed) {
+		RenderStatistics.add(this.values, value.getClass(), elapsed);
+	}
+
+	@Override
+	public void operation(DocumentBuilder builder, RenderPlan.Operation operation, long elapsed) {
+		RenderStatistics.add(this.operations, operation.getClass(), elapsed);
+	}
+
+	@Override
+	public void page(DocumentBuilder builder, int page) {
+		this.pages.add(page);
+		this.switches ++;
+	}
+
+	@Override
+	public void output(DocumentBuilder builder, long length) {
+		this.length = length;
+	}
+
+	public long getElapsedNanos(Phase phase) {
+		return this.phases.containsKey(phase) ? this.phases.get(phase).getElapsedNanos() : 0L;
+	}
+
+	public long getElapsedNanos() {
+		long elapsed;
+
+		elapsed = 0L;
+		for (Measure measure : this.phases.values()) elapsed += measure.getElapsedNanos();
+		return elapsed;
+	}
+
+	public long getValueCount() {
+		long count;
+
+		count = 0L;
+		for (Measure measure : this.values.values()) count += measure.getCount();
+		return count;
+	}
+
+	public Map<String, Measure> getValues() {
+		return new TreeMap<String, Measure>(this.values);
+	}
+
+	public Map<String, Measure> getOperations() {
+		return new TreeMap<String, Measure>(this.operations);
+	}
+
+	public int getPageCount() {
+		return this.pages.size();
+	}
+
+	public int getPageSwitches() {
+		return this.switches;
+	}
+
+	/* -1 until the document is written */
+	public long getLength() {
+		return this.length;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"phases=%s, values=%s, operations=%s, pages=%d (%d switches), length=%d",
+				this.phases,
+				this.values,
+				this.operations,
+				this.pages.size(),
+				this.switches,
+				this.length);
+	}
+
+}
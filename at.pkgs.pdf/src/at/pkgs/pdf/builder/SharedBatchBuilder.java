@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.pdf.PdfImportedPage;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfTemplate;
+
+/*
+ * writes every document into one PdfWriter instead of copying stamped
+ * documents: the template pages are imported once and placed as form
+ * XObjects, and each font of the registry is embedded once with a
+ * subset covering the glyphs of the whole output. annotations and form
+ * fields of the template are not carried over.
+ */
+public class SharedBatchBuilder {
+
+	private final PreparedTemplate template;
+
+	private final FontRegistry registry;
+
+	private final PdfReader reader;
+
+	private final Document document;
+
+	private final PdfWriter writer;
+
+	private final PdfImportedPage[] pages;
+
+	private final Map<Object, PdfTemplate> forms;
+
+	private int count;
+
+	public SharedBatchBuilder(
+			PreparedTemplate template,
+			OutputStream destination,
+			FontRegistry registry)
+					throws DocumentException {
+		this.template = template;
+		this.registry = registry;
+		this.reader = template.createReader();
+		this.document = new Document();
+		this.writer = PdfWriter.getInstance(this.document, destination);
+		this.pages = new PdfImportedPage[template.getNumberOfPages()];
+		this.forms = new HashMap<Object, PdfTemplate>();
+		this.count = 0;
+	}
+
+	public SharedBatchBuilder(
+			PreparedTemplate template,
+			OutputStream destination)
+					throws DocumentException {
+		this(template, destination, FontRegistry.getDefault());
+	}
+
+	public int getCount() {
+		return this.count;
+	}
+
+	protected PdfImportedPage page(int page) {
+		if (this.pages[page - 1] == null)
+			this.pages[page - 1] = this.writer.getImportedPage(this.reader, page);
+		return this.pages[page - 1];
+	}
+
+	/*
+	 * a rotated page size makes the page content start with the same
+	 * transformation PdfStamper applies to the over content, so the
+	 * imported page is placed with its inverse
+	 */
+	protected void place(PdfContentByte content, int page, Rectangle size) {
+		switch (size.getRotation()) {
+		case 90 :
+			content.addTemplate(this.page(page), 0F, -1F, 1F, 0F, 0F, size.getTop());
+			break;
+		case 180 :
+			content.addTemplate(this.page(page), -1F, 0F, 0F, -1F, size.getRight(), size.getTop());
+			break;
+		case 270 :
+			content.addTemplate(this.page(page), 0F, 1F, -1F, 0F, size.getRight(), 0F);
+			break;
+		default :
+			content.addTemplate(this.page(page), 0F, 0F);
+			break;
+		}
+	}
+
+	public void add(DocumentModel... models)
+			throws IOException, DocumentException {
+		List<Map<Integer, RenderPlan.Page>> plans;
+		int page;
+
+		plans = new ArrayList<Map<Integer, RenderPlan.Page>>();
+		for (DocumentModel model : models) {
+			Map<Integer, RenderPlan.Page> plan;
+
+			plan = new HashMap<Integer, RenderPlan.Page>();
+			for (RenderPlan.Page current : RenderPlan.compile(model, this.template, this.registry).getPages())
+				plan.put(current.getNumber(), current);
+			plans.add(plan);
+		}
+		for (page = 1; page <= this.pages.length; page ++) {
+			Rectangle size;
+			Rectangle crop;
+			PdfContentByte content;
+
+			size = this.reader.getPageSizeWithRotation(page);
+			crop = this.reader.getBoxSize(page, "crop");
+			this.document.setPageSize(size);
+			this.writer.setCropBoxSize(crop);
+			if (this.document.isOpen())
+				this.document.newPage();
+			else
+				this.document.open();
+			content = this.writer.getDirectContent();
+			this.place(content, page, size);
+			content.saveState();
+			for (Map<Integer, RenderPlan.Page> plan : plans) {
+				RenderPlan.Page current;
+
+				current = plan.get(page);
+				if (current == null) continue;
+				for (RenderPlan.Operation operation : current.getOperations())
+					operation.draw(content, this.forms);
+			}
+			content.restoreState();
+		}
+		this.count ++;
+	}
+
+	public void close()
+			throws IOException {
+		try {
+			if (this.count > 0) {
+				this.document.close();
+				return;
+			}
+			try {
+				this.document.close();
+			}
+			catch (RuntimeException ignored) {
+				/* the document is opened by the first page */
+			}
+			throw new IOException("no document added");
+		}
+		finally {
+			this.reader.close();
+		}
+	}
+
+	public static int merge(
+			PreparedTemplate template,
+			OutputStream destination,
+			Iterator<DocumentModel> models)
+					throws IOException, DocumentException {
+		SharedBatchBuilder builder;
+
+		builder = new SharedBatchBuilder(template, destination);
+		while (models.hasNext()) builder.add(models.next());
+		builder.close();
+		return builder.getCount();
+	}
+
+	public static int merge(
+			File template,
+			File destination,
+			Iterator<DocumentModel> models)
+					throws IOException, DocumentException {
+		PreparedTemplate prepared;
+
+		prepared = PreparedTemplate.load(template);
+		try (
+				OutputStream output = new BufferedOutputStream(
+						new FileOutputStream(
+								destination))) {
+			return SharedBatchBuilder.merge(prepared, output, models);
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.io.PrintStream;
+
+/*
+ * keeps statistics for every document in flight and prints them when a
+ * document took longer than the threshold, measured from the TEMPLATE
+ * phase until it is written. the statistics are attached to the builder
+ * when its TEMPLATE phase starts; builders which got the logger later
+ * are not measured.
+ */
+public class SlowRenderLogger implements RenderListener {
+
+	public static final String THRESHOLD_PROPERTY = SlowRenderLogger.class.getName() + ".threshold";
+
+	private static final class Entry {
+
+		private final long started;
+
+		private final RenderStatistics statistics;
+
+		Entry() {
+			this.started = System.nanoTime();
+			this.statistics = new RenderStatistics();
+		}
+
+	}
+
+	private final long threshold;
+
+	private final PrintStream output;
+
+	public SlowRenderLogger(long threshold, PrintStream output) {
+		if (threshold < 0L)
+			throw new IllegalArgumentException("threshold must not be negative");
+		this.threshold = threshold;
+		this.output = output;
+	}
+
+	/* threshold in milliseconds, logged to standard error */
+	public SlowRenderLogger(long threshold) {
+		this(threshold, System.err);
+	}
+
+	public long getThreshold() {
+		return this.threshold;
+	}
+
+	protected RenderStatistics statistics(DocumentBuilder builder) {
+		Object attachment;
+
+		attachment = builder.getAttachment();
+		return (attachment instanceof Entry) ?
+				((Entry)attachment).statistics :
+				null;
+	}
+
+	protected void log(long elapsed, RenderStatistics statistics) {
+		this.output.println(
+				String.format(
+						"slow render: %.1f ms, %s",
+						(double)elapsed / 1000000D,
+						statistics));
+	}
+
+	@Override
+	public void start(DocumentBuilder builder, Phase phase) {
+		RenderStatistics statistics;
+
+		if (phase == Phase.TEMPLATE) builder.setAttachment(new Entry());
+		statistics = this.statistics(builder);
+		if (statistics != null) statistics.start(builder, phase);
+	}
+
+	@Override
+	public void end(DocumentBuilder builder, Phase phase, long elapsed) {
+		RenderStatistics statistics;
+
+		statistics = this.statistics(builder);
+		if (statistics != null) statistics.end(builder, phase, elapsed);
+	}
+
+	@Override
+	public void value(DocumentBuilder builder, DocumentModel.Value value, long elapsed) {
+		RenderStatistics statistics;
+
+		statistics = this.statistics(builder);
+		if (statistics != null) statistics.value(builder, value, elapsed);
+	}
+
+	@Override
+	public void operation(DocumentBuilder builder, RenderPlan.Operation operation, long elapsed) {
+		RenderStatistics statistics;
+
+		statistics = this.statistics(builder);
+		if (statistics != null) statistics.operation(builder, operation, elapsed);
+	}
+
+	@Override
+	public void page(DocumentBuilder builder, int page) {
+		RenderStatistics statistics;
+
+		statistics = this.statistics(builder);
+		if (statistics != null) statistics.page(builder, page);
+	}
+
+	@Override
+	public void output(DocumentBuilder builder, long length) {
+		Object attachment;
+		Entry entry;
+		long elapsed;
+
+		attachment = builder.getAttachment();
+		if (!(attachment instanceof Entry)) return;
+		entry = (Entry)attachment;
+		builder.setAttachment(null);
+		entry.statistics.output(builder, length);
+		elapsed = System.nanoTime() - entry.started;
+		if (elapsed >= this.threshold * 1000000L) this.log(elapsed, entry.statistics);
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2009-2016, Architector Inc., Japan
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.pkgs.pdf.builder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import com.lowagie.text.pdf.PdfReader;
+
+/*
+ * keeps written bytes in memory until the threshold is exceeded, then
+ * moves them to a temporary file and continues there.
+ */
+public class SpillBuffer extends OutputStream {
+
+	public static final String THRESHOLD_PROPERTY = SpillBuffer.class.getName() + ".threshold";
+
+	public static final long DEFAULT_THRESHOLD = 16L * 1024L * 1024L;
+
+	private final long threshold;
+
+	private final File directory;
+
+	private ByteArrayOutputStream memory;
+
+	private File file;
+
+	private OutputStream output;
+
+	private long length;
+
+	private boolean closed;
+
+	public SpillBuffer(
+			long threshold,
+			File directory) {
+		if (threshold < 0L)
+			throw new IllegalArgumentException("threshold must not be negative");
+		this.threshold = threshold;
+		this.directory = directory;
+		this.memory = new ByteArrayOutputStream();
+		this.file = null;
+		this.output = null;
+		this.length = 0L;
+		this.closed = false;
+	}
+
+	public SpillBuffer(
+			long threshold) {
+		this(threshold, null);
+	}
+
+	public SpillBuffer() {
+		this(Long.getLong(SpillBuffer.THRESHOLD_PROPERTY, SpillBuffer.DEFAULT_THRESHOLD));
+	}
+
+	public long getThreshold() {
+		return this.threshold;
+	}
+
+	public long getLength() {
+		return this.length;
+	}
+
+	public boolean isSpilled() {
+		return this.file != null;
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	protected void spill()
+			throws IOException {
+		this.file = File.createTempFile(SpillBuffer.class.getName() + '.', ".pdf", this.directory);
+		this.output = new BufferedOutputStream(new FileOutputStream(this.file));
+		this.memory.writeTo(this.output);
+		this.memory = null;
+	}
+
+	@Override
+	public void write(int value)
+			throws IOException {
+		if (this.closed)
+			throw new IOException("buffer closed");
+		if (this.file == null && this.length + 1L > this.threshold) this.spill();
+		if (this.file == null)
+			this.memory.write(value);
+		else
+			this.output.write(value);
+		this.length ++;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length)
+			throws IOException {
+		if (this.closed)
+			throw new IOException("buffer closed");
+		if (this.file == null && this.length + length > this.threshold) this.spill();
+		if (this.file == null)
+			this.memory.write(bytes, offset, length);
+		else
+			this.output.write(bytes, offset, length);
+		this.length += length;
+	}
+
+	@Override
+	public void flush()
+			throws IOException {
+		if (this.output != null) this.output.flush();
+	}
+
+	@Override
+	public void close()
+			throws IOException {
+		if (this.closed) return;
+		this.closed = true;
+		if (this.output != null) this.output.close();
+	}
+
+	public InputStream openStream()
+			throws IOException {
+		this.close();
+		if (this.file != null)
+			return new BufferedInputStream(new FileInputStream(this.file));
+		if (this.memory == null)
+			throw new IOException("buffer deleted");
+		return new ByteArrayInputStream(this.memory.toByteArray());
+	}
+
+	public void writeTo(OutputStream destination)
+			throws IOException {
+		this.close();
+		if (this.file != null) {
+			Files.copy(this.file.toPath(), destination);
+			return;
+		}
+		if (this.memory == null)
+			throw new IOException("buffer deleted");
+		this.memory.writeTo(destination);
+	}
+
+	public PdfReader createReader()
+			throws IOException {
+		this.close();
+		if (this.file != null) return PdfFiles.open(this.file);
+		if (this.memory == null)
+			throw new IOException("buffer deleted");
+		return PdfFiles.open(this.memory.toByteArray());
+	}
+
+	public void delete() {
+		this.closed = true;
+		if (this.output != null) {
+			try {
+				this.output.close();
+			}
+			catch (IOException ignored) {
+				// do nothing
+			}
+		}
+		if (this.file != null) this.file.delete();
+		this.memory = null;
+	}
+
+}